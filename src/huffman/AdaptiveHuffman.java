@@ -0,0 +1,224 @@
+package huffman;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/*
+ * Author: Cooper LaRhette
+ */
+
+/**
+ * AdaptiveHuffman instances compress one long-running stream of text
+ * without a separate training pass. Both sides start from the same model
+ * (empty, or seeded from a corpus), count every character they encode or
+ * decode, and rebuild their code table from those counts at the same
+ * points in the stream, so the encoder and decoder always agree.
+ * <p>
+ * Characters the current table has no code for are sent as an escape code
+ * followed by the raw 16-bit char, so nothing is ever unencodable, and bring
+ * the next rebuild forward. Otherwise rebuilds start frequent and back off
+ * to every {@link #MAX_REBUILD_INTERVAL} characters; once the counts grow
+ * past {@link #MAX_TOTAL_COUNT} they are halved, so the model keeps
+ * following a drifting distribution.
+ * <p>
+ * An instance holds the state of one direction of one stream: use one
+ * instance to compress and a separate one to decompress, feeding the
+ * decoder the compressed frames in the order they were produced. Instances
+ * are not safe for concurrent use.
+ */
+public class AdaptiveHuffman {
+
+    /**
+     * Symbol for "not in the current table"; a char c is symbol c + 1.
+     */
+    static final int ESCAPE = 0;
+
+    static final int FIRST_REBUILD_INTERVAL = 64;
+    static final int MAX_REBUILD_INTERVAL = 1 << 15;
+
+    /**
+     * After an escape the next rebuild is at most this many chars away, so
+     * new characters soon get codes of their own.
+     */
+    static final int ESCAPE_REBUILD_INTERVAL = 256;
+    static final int MAX_TOTAL_COUNT = 1 << 16;
+
+    private static final int RAW_CHAR_BITS = 16;
+
+    // Longest code + escape payload any single char can take, in bytes
+    private static final int MAX_CHAR_BYTES = (CodeTable.MAX_CODE_LENGTH + RAW_CHAR_BITS + 7) / 8;
+
+    private final int[] counts = new int[CodeTable.MAX_SYMBOLS + 1];
+    private long totalCount;
+    private int rebuildInterval = FIRST_REBUILD_INTERVAL;
+    private int untilRebuild = FIRST_REBUILD_INTERVAL;
+    private long escapedCount;
+    private CodeTable codeTable;
+    private DecodeTable decodeTable;
+
+    /**
+     * Creates a model that knows no characters yet; each is escaped until
+     * the first rebuild after it appears.
+     */
+    public AdaptiveHuffman() {
+        this("");
+    }
+
+    /**
+     * Creates a model seeded with the character distribution of the given
+     * corpus. The matching encoder / decoder must be seeded with the same
+     * corpus.
+     *
+     * @param corpus Text whose distribution the stream is expected to start with
+     */
+    public AdaptiveHuffman(String corpus) {
+        for (int i = 0; i < corpus.length(); i++) {
+            counts[corpus.charAt(i) + 1]++;
+        }
+        totalCount = corpus.length();
+        rebuild();
+    }
+
+    /**
+     * @return Number of characters so far that had to be escaped because the
+     * table in use had no code for them.
+     */
+    public long escapedCount() {
+        return escapedCount;
+    }
+
+    // -----------------------------------------------
+    // Compression
+    // -----------------------------------------------
+
+    /**
+     * Compresses the next chunk of the stream, updating the model as it goes.
+     *
+     * @param message Next chunk of text in the stream
+     * @return {@code byte[]} holding the compressed frame, formatted as 2
+     * components: (1) a varint with the number of chars in the chunk, (2) the
+     * 0-padded bitstring, where escaped chars are the escape code followed by
+     * the 16-bit char.
+     */
+    public byte[] compress(CharSequence message) {
+        int count = message.length();
+        byte[] frame = new byte[HuffmanContainer.varintBytes(count) + count / 2 + MAX_CHAR_BYTES];
+        BitWriter writer = new BitWriter(frame, HuffmanContainer.writeVarint(frame, 0, count));
+        for (int i = 0; i < count; i++) {
+            writer.ensureCapacity(MAX_CHAR_BYTES);
+            char c = message.charAt(i);
+            int symbol = c + 1;
+            boolean escaped = !codeTable.contains(symbol);
+            if (escaped) {
+                writer.write(codeTable.codes[ESCAPE], codeTable.lengths[ESCAPE]);
+                writer.write(c, RAW_CHAR_BITS);
+            } else {
+                writer.write(codeTable.codes[symbol], codeTable.lengths[symbol]);
+            }
+            update(symbol, escaped);
+        }
+        int end = writer.flush();
+        return Arrays.copyOf(writer.buffer(), end);
+    }
+
+    // -----------------------------------------------
+    // Decompression
+    // -----------------------------------------------
+
+    /**
+     * Decompresses the next frame of the stream, updating the model as it goes.
+     *
+     * @param frame {@code byte[]} holding the next frame produced by the
+     *              encoding instance
+     * @return The chunk of text the frame holds.
+     * @throws IllegalArgumentException if the frame is corrupt or truncated,
+     *                                  after which this instance is out of
+     *                                  step with the stream
+     */
+    public String decompress(byte[] frame) {
+        ByteBuffer in = ByteBuffer.wrap(frame);
+        long count = HuffmanContainer.readVarint(in);
+        int pos = in.position();
+        if (count < 0 || count > (long) (frame.length - pos) * 8) {
+            throw new IllegalArgumentException("Compressed frame is truncated");
+        }
+        if (decodeTable == null) {
+            decodeTable = new DecodeTable(codeTable);
+        }
+        char[] result = new char[(int) count];
+        BitReader reader = new BitReader(frame, pos, frame.length);
+        for (int i = 0; i < result.length; i++) {
+            int symbol = decodeTable.next(reader);
+            boolean escaped = symbol == ESCAPE;
+            if (escaped) {
+                if (reader.available() < RAW_CHAR_BITS) {
+                    reader.fill();
+                }
+                symbol = reader.peek(RAW_CHAR_BITS) + 1;
+                reader.skip(RAW_CHAR_BITS);
+            }
+            result[i] = (char) (symbol - 1);
+            update(symbol, escaped);
+        }
+        if (reader.overrun()) {
+            throw new IllegalArgumentException("Compressed frame is truncated");
+        }
+        return new String(result);
+    }
+
+    // -----------------------------------------------
+    // Model
+    // -----------------------------------------------
+
+    /**
+     * Counts one more occurrence of symbol (and of the escape code, if it was
+     * escaped), rebuilding the table when the interval runs out.
+     *
+     * @param symbol  Symbol just encoded or decoded
+     * @param escaped Whether it was sent through the escape code
+     */
+    private void update(int symbol, boolean escaped) {
+        counts[symbol]++;
+        totalCount++;
+        if (escaped) {
+            counts[ESCAPE]++;
+            escapedCount++;
+            untilRebuild = Math.min(untilRebuild, ESCAPE_REBUILD_INTERVAL);
+        }
+        if (--untilRebuild == 0) {
+            rebuild();
+            rebuildInterval = Math.min(2 * rebuildInterval, MAX_REBUILD_INTERVAL);
+            untilRebuild = rebuildInterval;
+        }
+    }
+
+    /**
+     * Rebuilds the code table from the current counts, first halving the
+     * counts until they are back within MAX_TOTAL_COUNT (or every count is
+     * down to 1). The escape code always keeps a count of at least 1. The
+     * decode table is only rebuilt once this instance has decoded, so an
+     * encoder never builds one.
+     */
+    private void rebuild() {
+        long previousTotal = -1;
+        while (totalCount > MAX_TOTAL_COUNT && totalCount != previousTotal) {
+            previousTotal = totalCount;
+            totalCount = 0;
+            for (int symbol = 0; symbol < counts.length; symbol++) {
+                counts[symbol] = (counts[symbol] + 1) >>> 1;
+                totalCount += counts[symbol];
+            }
+        }
+        counts[ESCAPE] = Math.max(1, counts[ESCAPE]);
+        codeTable = CodeTable.canonical(Huffman.codeLengths(counts));
+        decodeTable = decodeTable == null ? null : new DecodeTable(codeTable);
+    }
+
+    /**
+     * @return Sum of the counts the model currently holds.
+     */
+    long totalCount() {
+        return totalCount;
+    }
+
+}
@@ -0,0 +1,83 @@
+package huffman;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class AdaptiveHuffmanTests {
+
+    @Test
+    public void roundTrip_t0() {
+        AdaptiveHuffman encoder = new AdaptiveHuffman();
+        AdaptiveHuffman decoder = new AdaptiveHuffman();
+        assertEquals("", decoder.decompress(encoder.compress("")));
+        assertEquals("ABBBCC", decoder.decompress(encoder.compress("ABBBCC")));
+        // The empty model has no codes until its first rebuild
+        assertEquals(6, encoder.escapedCount());
+        assertEquals(6, decoder.escapedCount());
+    }
+
+    @Test
+    public void roundTrip_t1() {
+        // The distribution drifts from lowercase to digits to CJK over many frames
+        AdaptiveHuffman encoder = new AdaptiveHuffman();
+        AdaptiveHuffman decoder = new AdaptiveHuffman();
+        List<String> frames = new ArrayList<>();
+        List<byte[]> compressed = new ArrayList<>();
+        for (int f = 0; f < 60; f++) {
+            StringBuilder frame = new StringBuilder();
+            char base = f < 20 ? 'a' : f < 40 ? '0' : '\u4e00';
+            for (int i = 0; i < 5000; i++) {
+                frame.append((char) (base + (i * i + f) % (1 + i % 10)));
+            }
+            frames.add(frame.toString());
+            compressed.add(encoder.compress(frame));
+        }
+        long compressedBytes = 0;
+        for (int f = 0; f < frames.size(); f++) {
+            assertEquals(frames.get(f), decoder.decompress(compressed.get(f)));
+            compressedBytes += compressed.get(f).length;
+        }
+        // At most 10 distinct chars at a time: well under 5 bits each, even
+        // while the model catches up after each shift
+        assertTrue(compressedBytes < 60 * 5000 * 5 / 8);
+    }
+
+    @Test
+    public void roundTrip_t2() {
+        AdaptiveHuffman encoder = new AdaptiveHuffman("ABBBCC");
+        AdaptiveHuffman decoder = new AdaptiveHuffman("ABBBCC");
+        assertEquals("CAB\u0000\uffffCAB", decoder.decompress(encoder.compress("CAB\u0000\uffffCAB")));
+        assertEquals(2, encoder.escapedCount());
+    }
+
+    @Test
+    public void roundTrip_t3() {
+        // A seed far past the limit is halved all the way back within it
+        StringBuilder corpus = new StringBuilder();
+        for (int i = 0; i < 100 * AdaptiveHuffman.MAX_TOTAL_COUNT; i++) {
+            corpus.append((char) ('A' + i % 3));
+        }
+        AdaptiveHuffman encoder = new AdaptiveHuffman(corpus.toString());
+        AdaptiveHuffman decoder = new AdaptiveHuffman(corpus.toString());
+        assertTrue(encoder.totalCount() <= AdaptiveHuffman.MAX_TOTAL_COUNT);
+        StringBuilder frame = new StringBuilder();
+        for (int i = 0; i < 3 * AdaptiveHuffman.MAX_REBUILD_INTERVAL; i++) {
+            frame.append(i % 5 == 0 ? 'A' : 'D');
+        }
+        assertEquals(frame.toString(), decoder.decompress(encoder.compress(frame)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decomp_t0() {
+        AdaptiveHuffman encoder = new AdaptiveHuffman();
+        byte[] frame = encoder.compress("ABBBCC");
+        // Drop the last byte of the bitstring
+        byte[] truncated = new byte[frame.length - 1];
+        System.arraycopy(frame, 0, truncated, 0, truncated.length);
+        new AdaptiveHuffman().decompress(truncated);
+    }
+
+}
@@ -0,0 +1,119 @@
+package huffman;
+
+import java.nio.ByteBuffer;
+
+/*
+ * Author: Cooper LaRhette
+ */
+
+/**
+ * Reads a most-significant-bit first bitstring out of a byte array or
+ * ByteBuffer through a left-aligned 64-bit accumulator, so callers can peek
+ * at up to {@link #MAX_PEEK} bits at once. Reading past the end yields 0-bits; callers
+ * check {@link #overrun()} once decoding is done instead of per bit.
+ */
+final class BitReader {
+
+    /**
+     * Number of bits guaranteed available after {@link #fill()}.
+     */
+    static final int MAX_PEEK = 57;
+
+    private final byte[] buffer;
+    private final ByteBuffer source;
+    private final int start;
+    private final int limit;
+    private int position;
+    private long accumulator;
+    private int bitCount;
+
+    /**
+     * @param buffer   Source array
+     * @param position Index in buffer of the first byte to read
+     * @param limit    Index in buffer just past the last byte to read
+     */
+    BitReader(byte[] buffer, int position, int limit) {
+        this.buffer = buffer;
+        this.source = null;
+        this.start = position;
+        this.position = position;
+        this.limit = limit;
+    }
+
+    /**
+     * Reads the given buffer from its position to its limit, leaving the
+     * buffer's own position untouched; see {@link #bytesConsumed()}.
+     *
+     * @param source Source buffer; direct buffers are read without a heap copy
+     */
+    BitReader(ByteBuffer source) {
+        if (source.hasArray()) {
+            this.buffer = source.array();
+            this.source = null;
+            this.start = source.arrayOffset() + source.position();
+            this.limit = source.arrayOffset() + source.limit();
+        } else {
+            this.buffer = null;
+            this.source = source;
+            this.start = source.position();
+            this.limit = source.limit();
+        }
+        this.position = start;
+    }
+
+    /**
+     * Tops the accumulator up to at least {@link #MAX_PEEK} bits.
+     */
+    void fill() {
+        while (bitCount <= 56) {
+            int next = 0;
+            if (position < limit) {
+                next = (source == null ? buffer[position] : source.get(position)) & 0xFF;
+            }
+            position++;
+            accumulator |= (long) next << (56 - bitCount);
+            bitCount += 8;
+        }
+    }
+
+    /**
+     * @return Number of buffered bits; once below the longest code length the
+     * caller should {@link #fill()} before peeking.
+     */
+    int available() {
+        return bitCount;
+    }
+
+    /**
+     * @param n Number of bits to look at, in [1, available()]
+     * @return The next n bits, right-aligned, without consuming them.
+     */
+    int peek(int n) {
+        return (int) (accumulator >>> (64 - n));
+    }
+
+    /**
+     * Consumes n bits, which must already be buffered.
+     *
+     * @param n Number of bits to drop, in [0, available()]
+     */
+    void skip(int n) {
+        accumulator <<= n;
+        bitCount -= n;
+    }
+
+    /**
+     * @return Number of whole or partial bytes of the source consumed so far.
+     */
+    int bytesConsumed() {
+        return (int) (((long) (position - start) * 8 - bitCount + 7) >>> 3);
+    }
+
+    /**
+     * @return Whether more bits were consumed than the source actually held.
+     */
+    boolean overrun() {
+        return (long) (position - limit) * 8 > bitCount;
+    }
+
+}
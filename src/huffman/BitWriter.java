@@ -0,0 +1,107 @@
+package huffman;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/*
+ * Author: Cooper LaRhette
+ */
+
+/**
+ * Packs variable-length codes most-significant-bit first into a byte array
+ * or ByteBuffer through a 64-bit accumulator, emitting whole bytes as soon
+ * as they fill.
+ */
+final class BitWriter {
+
+    private byte[] buffer;
+    private final ByteBuffer target;
+    private int position;
+    private long accumulator;
+    private int bitCount;
+
+    /**
+     * @param buffer   Destination array, sized by the caller to fit the output
+     * @param position Index in buffer of the first byte to write
+     */
+    BitWriter(byte[] buffer, int position) {
+        this.buffer = buffer;
+        this.target = null;
+        this.position = position;
+    }
+
+    /**
+     * @param target Destination buffer, written from its position onward;
+     *               direct buffers are written without a heap copy
+     */
+    BitWriter(ByteBuffer target) {
+        if (target.hasArray()) {
+            this.buffer = target.array();
+            this.target = null;
+            this.position = target.arrayOffset() + target.position();
+        } else {
+            this.buffer = null;
+            this.target = target;
+        }
+    }
+
+    /**
+     * Appends the low {@code length} bits of code to the output.
+     *
+     * @param code   Right-aligned code bits
+     * @param length Number of bits to write, at most {@link CodeTable#MAX_CODE_LENGTH}
+     */
+    void write(long code, int length) {
+        accumulator = (accumulator << length) | code;
+        bitCount += length;
+        while (bitCount >= 8) {
+            bitCount -= 8;
+            if (target == null) {
+                buffer[position++] = (byte) (accumulator >>> bitCount);
+            } else {
+                target.put((byte) (accumulator >>> bitCount));
+            }
+        }
+    }
+
+    /**
+     * @return Index in the array of the next byte to write.
+     */
+    int position() {
+        return position;
+    }
+
+    /**
+     * @return The destination array, which {@link #ensureCapacity(int)} may have replaced.
+     */
+    byte[] buffer() {
+        return buffer;
+    }
+
+    /**
+     * Grows the destination array, if needed, so at least the given number
+     * of bytes can still be written. Only for writers whose caller owns the
+     * array and sizes it incrementally.
+     *
+     * @param bytes Number of bytes that must fit after the current position
+     */
+    void ensureCapacity(int bytes) {
+        if (buffer.length - position < bytes) {
+            buffer = Arrays.copyOf(buffer, Math.max(2 * buffer.length, position + bytes));
+        }
+    }
+
+    /**
+     * Writes any pending partial byte, 0-padded on the right.
+     *
+     * @return Index in buffer just past the last byte written (for a heap
+     * ByteBuffer target, including its array offset).
+     */
+    int flush() {
+        if (bitCount > 0) {
+            write(0, 8 - bitCount);
+        }
+        return position;
+    }
+
+}
@@ -0,0 +1,205 @@
+package huffman;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/*
+ * Author: Cooper LaRhette
+ */
+
+/**
+ * ByteHuffman instances provide reusable Huffman Encoding Maps over raw
+ * bytes rather than chars, for binary payloads (serialized records, UTF-8
+ * logs) that would otherwise have to pass through a String. The code table
+ * has only 256 entries, and messages are compressed straight between
+ * ByteBuffers, heap or direct, without any charset conversion.
+ */
+public class ByteHuffman {
+
+    /**
+     * Size of the byte alphabet.
+     */
+    static final int SYMBOLS = 256;
+
+    private final CodeTable codeTable;
+    private final DecodeTable decodeTable;
+
+    /**
+     * Creates the Encoding Map using the byte distribution in the given
+     * training corpus.
+     *
+     * @param corpus Bytes with a distribution comparable to later messages;
+     *               only its remaining bytes are counted, and its position
+     *               is left untouched
+     */
+    ByteHuffman(ByteBuffer corpus) {
+        this(CodeTable.canonical(Huffman.codeLengths(countBytes(corpus))));
+    }
+
+    /**
+     * Creates the Encoding Map using the byte distribution in the given
+     * training corpus.
+     *
+     * @param corpus Bytes with a distribution comparable to later messages
+     */
+    ByteHuffman(byte[] corpus) {
+        this(ByteBuffer.wrap(corpus));
+    }
+
+    private ByteHuffman(CodeTable codeTable) {
+        this.codeTable = codeTable;
+        this.decodeTable = new DecodeTable(codeTable);
+    }
+
+    /**
+     * Counts the occurrences of every byte value remaining in the buffer.
+     *
+     * @param corpus Bytes to count; its position is left untouched
+     * @return Histogram indexed by unsigned byte value.
+     */
+    static int[] countBytes(ByteBuffer corpus) {
+        int[] counts = new int[SYMBOLS];
+        for (int i = corpus.position(); i < corpus.limit(); i++) {
+            counts[corpus.get(i) & 0xFF]++;
+        }
+        return counts;
+    }
+
+    // -----------------------------------------------
+    // Model Serialization
+    // -----------------------------------------------
+
+    /**
+     * @return {@code byte[]} holding the model's code lengths, readable by
+     * {@link #loadModel(byte[])}.
+     * @see Huffman#exportModel()
+     */
+    public byte[] exportModel() {
+        return codeTable.toBytes();
+    }
+
+    /**
+     * Rebuilds a ByteHuffman instance from a model written by {@link #exportModel()}.
+     *
+     * @param model {@code byte[]} holding the serialized model
+     * @return ByteHuffman instance for the model.
+     * @throws IllegalArgumentException if the model is malformed or has
+     *                                  symbols outside the byte range
+     */
+    public static ByteHuffman loadModel(byte[] model) {
+        CodeTable table = CodeTable.fromBytes(model);
+        if (table.lengths.length > SYMBOLS) {
+            throw new IllegalArgumentException("Model has symbols outside the byte range");
+        }
+        return new ByteHuffman(table);
+    }
+
+    // -----------------------------------------------
+    // Compression
+    // -----------------------------------------------
+
+    /**
+     * @param message Bytes to measure; its position is left untouched
+     * @return Exact number of bytes {@link #compress(ByteBuffer, ByteBuffer)}
+     * will write for the message's remaining bytes.
+     * @throws IllegalArgumentException if the message contains a byte absent
+     *                                  from the training corpus
+     */
+    public int compressedLength(ByteBuffer message) {
+        long bytes = (codeTable.encodedBits(message) + 7) >>> 3;
+        bytes += HuffmanContainer.varintBytes(message.remaining());
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Message is too large to compress into a single buffer");
+        }
+        return (int) bytes;
+    }
+
+    /**
+     * Compresses the remaining bytes of src into dst, advancing both buffers'
+     * positions. Formatted as 2 components: (1) a varint with the number of
+     * bytes in the message, (2) the 0-padded Huffman coded bitstring.
+     *
+     * @param src Message to compress
+     * @param dst Destination with at least {@link #compressedLength(ByteBuffer)}
+     *            bytes remaining
+     * @throws IllegalArgumentException if the message contains a byte absent
+     *                                  from the training corpus
+     * @throws BufferOverflowException  if dst has too little room
+     */
+    public void compress(ByteBuffer src, ByteBuffer dst) {
+        int length = compressedLength(src);
+        if (dst.remaining() < length) {
+            throw new BufferOverflowException();
+        }
+        int end = dst.position() + length;
+        HuffmanContainer.writeVarint(dst, src.remaining());
+        BitWriter writer = new BitWriter(dst);
+        codeTable.encode(src, writer);
+        writer.flush();
+        dst.position(end);
+    }
+
+    /**
+     * @param message Bytes to compress
+     * @return {@code byte[]} holding the compressed message, formatted as in
+     * {@link #compress(ByteBuffer, ByteBuffer)}.
+     */
+    public byte[] compress(byte[] message) {
+        ByteBuffer src = ByteBuffer.wrap(message);
+        byte[] result = new byte[compressedLength(src)];
+        compress(src, ByteBuffer.wrap(result));
+        return result;
+    }
+
+    // -----------------------------------------------
+    // Decompression
+    // -----------------------------------------------
+
+    /**
+     * @param compressed Compressed message; its position is left untouched
+     * @return Number of bytes the message will decompress to.
+     * @throws IllegalArgumentException if the length prefix is malformed
+     */
+    public int decompressedLength(ByteBuffer compressed) {
+        long count = HuffmanContainer.readVarint(compressed.duplicate());
+        if (count < 0 || count > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Compressed message has a malformed length");
+        }
+        return (int) count;
+    }
+
+    /**
+     * Decompresses one message from src into dst, advancing src past the
+     * message (so several can be read back to back) and dst past the output.
+     *
+     * @param src Compressed message, as written by {@link #compress(ByteBuffer, ByteBuffer)}
+     * @param dst Destination with at least {@link #decompressedLength(ByteBuffer)}
+     *            bytes remaining
+     * @throws IllegalArgumentException if the message is corrupt or truncated
+     * @throws BufferOverflowException  if dst has too little room
+     */
+    public void decompress(ByteBuffer src, ByteBuffer dst) {
+        int count = decompressedLength(src);
+        if (dst.remaining() < count) {
+            throw new BufferOverflowException();
+        }
+        src.position(src.position() + HuffmanContainer.varintBytes(count));
+        BitReader reader = new BitReader(src);
+        decodeTable.decode(reader, dst, count);
+        src.position(src.position() + reader.bytesConsumed());
+    }
+
+    /**
+     * @param compressed {@code byte[]} holding a message compressed by
+     *                   {@link #compress(byte[])}
+     * @return The original bytes.
+     * @throws IllegalArgumentException if the message is corrupt or truncated
+     */
+    public byte[] decompress(byte[] compressed) {
+        ByteBuffer src = ByteBuffer.wrap(compressed);
+        byte[] result = new byte[decompressedLength(src)];
+        decompress(src, ByteBuffer.wrap(result));
+        return result;
+    }
+
+}
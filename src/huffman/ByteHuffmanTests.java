@@ -0,0 +1,86 @@
+package huffman;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+public class ByteHuffmanTests {
+
+    @Test
+    public void comp_t0() {
+        ByteHuffman h = new ByteHuffman(new byte[]{1, 2, 2, 2, 3, 3});
+        // byte 0: 0000 0110 = 6 (varint message length = 6)
+        // byte 1: 1000 0111 = -121 (10 = 1, 0 = 2, 11 = 3)
+        // byte 2: 1000 0000 = -128
+        byte[] compressed = {6, -121, -128};
+        assertArrayEquals(compressed, h.compress(new byte[]{1, 2, 2, 2, 3, 3}));
+    }
+
+    @Test
+    public void decomp_t0() {
+        ByteHuffman h = new ByteHuffman(new byte[]{1, 2, 2, 2, 3, 3});
+        byte[] compressed = {6, 77, -128};
+        assertArrayEquals(new byte[]{2, 1, 2, 3, 2, 3}, h.decompress(compressed));
+    }
+
+    @Test
+    public void roundTrip_t0() {
+        // Every byte value, skewed towards small ones
+        Random random = new Random(0);
+        byte[] message = new byte[100000];
+        for (int i = 0; i < message.length; i++) {
+            message[i] = (byte) (i < 256 ? i : Math.abs(random.nextGaussian()) * 20);
+        }
+        ByteHuffman h = new ByteHuffman(message);
+        byte[] compressed = h.compress(message);
+        assertTrue(compressed.length < message.length);
+        assertArrayEquals(message, h.decompress(compressed));
+    }
+
+    @Test
+    public void roundTrip_t1() {
+        // Direct buffers, two messages back to back
+        byte[] corpus = "GET /index.html HTTP/1.1\r\nHost: example.com\r\n".getBytes();
+        ByteHuffman h = new ByteHuffman(corpus);
+        ByteBuffer src = ByteBuffer.allocateDirect(corpus.length);
+        src.put(corpus).flip();
+        ByteBuffer compressed = ByteBuffer.allocateDirect(2 * h.compressedLength(src));
+        h.compress(src.duplicate(), compressed);
+        h.compress(src.duplicate(), compressed);
+        compressed.flip();
+        ByteBuffer decompressed = ByteBuffer.allocateDirect(2 * corpus.length);
+        h.decompress(compressed, decompressed);
+        h.decompress(compressed, decompressed);
+        assertFalse(compressed.hasRemaining());
+        decompressed.flip();
+        for (int copy = 0; copy < 2; copy++) {
+            for (byte b : corpus) {
+                assertEquals(b, decompressed.get());
+            }
+        }
+    }
+
+    @Test
+    public void model_t0() {
+        ByteHuffman h = new ByteHuffman(new byte[]{-1, 0, 0, 7});
+        ByteHuffman loaded = ByteHuffman.loadModel(h.exportModel());
+        byte[] message = {7, 0, -1, 0};
+        assertArrayEquals(h.compress(message), loaded.compress(message));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void comp_t1() {
+        ByteHuffman h = new ByteHuffman(new byte[]{1, 2});
+        h.compress(new byte[]{1, 2, 3});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decomp_t1() {
+        // A length prefix of 2^35, past what a single array can hold
+        ByteHuffman h = new ByteHuffman(new byte[]{1, 2});
+        h.decompress(new byte[]{(byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x01});
+    }
+
+}
@@ -0,0 +1,329 @@
+package huffman;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * Author: Cooper LaRhette
+ */
+
+/**
+ * Flat, array-backed form of a Huffman Encoding Map. Each symbol (a char
+ * value for text corpi) indexes directly into the codes and lengths arrays,
+ * so encoding a symbol is two array reads rather than a boxed Map lookup.
+ * A length of 0 means the symbol never appeared in the training corpus.
+ * <p>
+ * Tables built by {@link #canonical(byte[])} assign codes canonically:
+ * shorter codes first, ties broken by symbol, each code the next binary
+ * number after the previous one. The lengths alone then determine every
+ * code, which is what {@link #toBytes()} serializes.
+ * <p>
+ * A table is never modified after construction, so it can be read
+ * concurrently without synchronization; callers must not write to its arrays.
+ */
+final class CodeTable {
+
+    /**
+     * Longest code the table accepts; keeps every code writable through the
+     * 64-bit accumulator in {@link BitWriter} with a partial byte pending.
+     */
+    static final int MAX_CODE_LENGTH = 56;
+
+    /**
+     * Alphabet bound for serialized tables: every char value.
+     */
+    static final int MAX_SYMBOLS = 1 << 16;
+
+    private static final byte MODEL_VERSION = 1;
+
+    final long[] codes;
+    final byte[] lengths;
+    final int maxLength;
+
+    /**
+     * Creates a table over the given parallel code / length arrays.
+     *
+     * @param codes   Right-aligned code bits for each symbol
+     * @param lengths Number of bits in each symbol's code, 0 if unused
+     */
+    CodeTable(long[] codes, byte[] lengths) {
+        int max = 0;
+        for (byte length : lengths) {
+            max = Math.max(max, length);
+        }
+        if (max > MAX_CODE_LENGTH) {
+            throw new IllegalArgumentException("Code length " + max + " exceeds " + MAX_CODE_LENGTH + " bits");
+        }
+        this.codes = codes;
+        this.lengths = lengths;
+        this.maxLength = max;
+    }
+
+    /**
+     * Assigns canonical codes to the given code lengths.
+     *
+     * @param lengths Code length of each symbol, 0 for unused symbols
+     * @return Canonical code table over those lengths.
+     * @throws IllegalArgumentException if the lengths are too long or
+     *                                  over-subscribed (not a prefix code)
+     */
+    static CodeTable canonical(byte[] lengths) {
+        int[] lengthCounts = new int[MAX_CODE_LENGTH + 1];
+        for (byte length : lengths) {
+            if (length < 0 || length > MAX_CODE_LENGTH) {
+                throw new IllegalArgumentException("Code length " + length + " is out of range");
+            }
+            lengthCounts[length]++;
+        }
+        lengthCounts[0] = 0;
+        long[] nextCode = new long[MAX_CODE_LENGTH + 1];
+        long code = 0;
+        for (int length = 1; length <= MAX_CODE_LENGTH; length++) {
+            code = (code + lengthCounts[length - 1]) << 1;
+            nextCode[length] = code;
+        }
+        long[] codes = new long[lengths.length];
+        for (int symbol = 0; symbol < lengths.length; symbol++) {
+            int length = lengths[symbol];
+            if (length != 0) {
+                codes[symbol] = nextCode[length]++;
+                if (codes[symbol] >>> length != 0) {
+                    throw new IllegalArgumentException("Code lengths do not form a prefix code");
+                }
+            }
+        }
+        return new CodeTable(codes, lengths);
+    }
+
+    /**
+     * Serializes the table as its code lengths. Formatted as (1) a version
+     * byte, (2) a varint count of used symbols, (3) for each used symbol in
+     * ascending order, a varint gap from the previous used symbol (the symbol
+     * itself for the first) followed by a byte with its code length. Only
+     * meaningful for canonical tables.
+     *
+     * @return {@code byte[]} readable by {@link #fromBytes(byte[])}.
+     */
+    byte[] toBytes() {
+        int used = 0;
+        for (byte length : lengths) {
+            if (length != 0) {
+                used++;
+            }
+        }
+        byte[] out = new byte[1 + HuffmanContainer.varintBytes(used) + used * (HuffmanContainer.varintBytes(lengths.length) + 1)];
+        int pos = 0;
+        out[pos++] = MODEL_VERSION;
+        pos = HuffmanContainer.writeVarint(out, pos, used);
+        int previous = 0;
+        for (int symbol = 0; symbol < lengths.length; symbol++) {
+            if (lengths[symbol] != 0) {
+                pos = HuffmanContainer.writeVarint(out, pos, symbol - previous);
+                out[pos++] = lengths[symbol];
+                previous = symbol;
+            }
+        }
+        return Arrays.copyOf(out, pos);
+    }
+
+    /**
+     * Rebuilds a canonical table from bytes written by {@link #toBytes()}.
+     * A model with no symbols, as exported after an empty corpus, yields an
+     * empty table.
+     *
+     * @param bytes Serialized table
+     * @return The canonical code table.
+     * @throws IllegalArgumentException if the bytes are malformed or the
+     *                                  lengths do not form a prefix code
+     */
+    static CodeTable fromBytes(byte[] bytes) {
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        if (!in.hasRemaining() || in.get() != MODEL_VERSION) {
+            throw new IllegalArgumentException("Unsupported Huffman model version");
+        }
+        long used = HuffmanContainer.readVarint(in);
+        if (used < 0 || used > MAX_SYMBOLS) {
+            throw new IllegalArgumentException("Huffman model has an invalid symbol count " + used);
+        }
+        int[] symbols = new int[(int) used];
+        byte[] symbolLengths = new byte[(int) used];
+        long symbol = 0;
+        for (int i = 0; i < used; i++) {
+            long gap = HuffmanContainer.readVarint(in);
+            symbol += gap;
+            if (gap < 0 || symbol >= MAX_SYMBOLS || (i > 0 && gap == 0)) {
+                throw new IllegalArgumentException("Huffman model has an invalid symbol");
+            }
+            if (!in.hasRemaining()) {
+                throw new IllegalArgumentException("Huffman model is truncated");
+            }
+            symbols[i] = (int) symbol;
+            symbolLengths[i] = in.get();
+            if (symbolLengths[i] == 0) {
+                throw new IllegalArgumentException("Huffman model has an empty code");
+            }
+        }
+        byte[] lengths = new byte[used == 0 ? 0 : symbols[symbols.length - 1] + 1];
+        for (int i = 0; i < symbols.length; i++) {
+            lengths[symbols[i]] = symbolLengths[i];
+        }
+        return canonical(lengths);
+    }
+
+    /**
+     * @return The table as a Map from each char to its code as a String of
+     * '0's and '1's.
+     */
+    Map<Character, String> toEncodingMap() {
+        Map<Character, String> map = new HashMap<>();
+        for (int symbol = 0; symbol < lengths.length; symbol++) {
+            int length = lengths[symbol];
+            if (length != 0) {
+                StringBuilder bitString = new StringBuilder(length);
+                for (int i = length - 1; i >= 0; i--) {
+                    bitString.append((codes[symbol] >>> i & 1) == 0 ? '0' : '1');
+                }
+                map.put((char) symbol, bitString.toString());
+            }
+        }
+        return map;
+    }
+
+    /**
+     * @param symbol Symbol to look up
+     * @return Whether the symbol has a code in this table.
+     */
+    boolean contains(int symbol) {
+        return symbol >= 0 && symbol < lengths.length && lengths[symbol] != 0;
+    }
+
+    /**
+     * Sums the code lengths of every char in the message, i.e. the exact
+     * size of its encoded bitstring.
+     *
+     * @param message Text to measure
+     * @param from    Index of the first char (inclusive)
+     * @param to      Index of the last char (exclusive)
+     * @return Number of bits needed to encode message[from, to).
+     * @throws IllegalArgumentException if a char has no code in this table
+     */
+    long encodedBits(CharSequence message, int from, int to) {
+        long bits = 0;
+        for (int i = from; i < to; i++) {
+            char c = message.charAt(i);
+            if (!contains(c)) {
+                throw new IllegalArgumentException("Character '" + c + "' is not in the encoding map");
+            }
+            bits += lengths[c];
+        }
+        return bits;
+    }
+
+    /**
+     * @param message Text to scan
+     * @param from    Index of the first char (inclusive)
+     * @param to      Index of the last char (exclusive)
+     * @return Number of chars in message[from, to) with no code in this table.
+     */
+    long unseenChars(CharSequence message, int from, int to) {
+        long unseen = 0;
+        for (int i = from; i < to; i++) {
+            if (!contains(message.charAt(i))) {
+                unseen++;
+            }
+        }
+        return unseen;
+    }
+
+    /**
+     * Writes the codes for message[from, to) to the given writer.
+     *
+     * @param message Text to encode; every char must be in the table
+     * @param from    Index of the first char (inclusive)
+     * @param to      Index of the last char (exclusive)
+     * @param writer  Destination of the encoded bits
+     */
+    void encode(CharSequence message, int from, int to, BitWriter writer) {
+        for (int i = from; i < to; i++) {
+            char c = message.charAt(i);
+            writer.write(codes[c], lengths[c]);
+        }
+    }
+
+    /**
+     * Sums the code lengths of every stride-th char of message[from, to),
+     * i.e. the exact size of one stream of an interleaved block.
+     *
+     * @param message Text to measure
+     * @param from    Index of the first char (inclusive)
+     * @param to      Index of the last char (exclusive)
+     * @param stride  Distance between consecutive chars to measure
+     * @return Number of bits needed to encode message[from], message[from + stride], ...
+     * @throws IllegalArgumentException if a char has no code in this table
+     */
+    long encodedBits(CharSequence message, int from, int to, int stride) {
+        long bits = 0;
+        for (int i = from; i < to; i += stride) {
+            char c = message.charAt(i);
+            if (!contains(c)) {
+                throw new IllegalArgumentException("Character '" + c + "' is not in the encoding map");
+            }
+            bits += lengths[c];
+        }
+        return bits;
+    }
+
+    /**
+     * Writes the codes for every stride-th char of message[from, to) to the
+     * given writer.
+     *
+     * @param message Text to encode; every char must be in the table
+     * @param from    Index of the first char (inclusive)
+     * @param to      Index of the last char (exclusive)
+     * @param stride  Distance between consecutive chars to encode
+     * @param writer  Destination of the encoded bits
+     */
+    void encode(CharSequence message, int from, int to, int stride, BitWriter writer) {
+        for (int i = from; i < to; i += stride) {
+            char c = message.charAt(i);
+            writer.write(codes[c], lengths[c]);
+        }
+    }
+
+    /**
+     * Sums the code lengths of the bytes remaining in src, i.e. the exact
+     * size of their encoded bitstring. Does not move src's position.
+     *
+     * @param src Bytes to measure
+     * @return Number of bits needed to encode src's remaining bytes.
+     * @throws IllegalArgumentException if a byte has no code in this table
+     */
+    long encodedBits(ByteBuffer src) {
+        long bits = 0;
+        for (int i = src.position(); i < src.limit(); i++) {
+            int b = src.get(i) & 0xFF;
+            if (!contains(b)) {
+                throw new IllegalArgumentException("Byte " + b + " is not in the encoding map");
+            }
+            bits += lengths[b];
+        }
+        return bits;
+    }
+
+    /**
+     * Writes the codes for the bytes remaining in src to the given writer,
+     * consuming them.
+     *
+     * @param src    Bytes to encode; every byte must be in the table
+     * @param writer Destination of the encoded bits
+     */
+    void encode(ByteBuffer src, BitWriter writer) {
+        while (src.hasRemaining()) {
+            int b = src.get() & 0xFF;
+            writer.write(codes[b], lengths[b]);
+        }
+    }
+
+}
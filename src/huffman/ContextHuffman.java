@@ -0,0 +1,265 @@
+package huffman;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/*
+ * Author: Cooper LaRhette
+ */
+
+/**
+ * ContextHuffman instances provide order-1 Huffman Encoding Maps: the code
+ * for each character depends on the character before it. Structured text
+ * such as logs is far more predictable one character in than overall (a
+ * digit mostly follows a digit, '=' a letter), so per-context codes are
+ * noticeably shorter than a single table's.
+ * <p>
+ * Each of the most frequent preceding characters in the training corpus
+ * (up to {@link #MAX_CONTEXTS}, each seen at least {@link #MIN_CONTEXT_COUNT}
+ * times) gets its own code table over the characters that followed it.
+ * A character that never followed its context in training is sent as that
+ * table's escape code followed by its order-0 code; characters after any
+ * other context, and the first character of a message, use the order-0
+ * table directly. Decoding is one table lookup per character, like the
+ * order-0 decoder, plus one more after an escape.
+ */
+public class ContextHuffman {
+
+    /**
+     * Most contexts to give their own table; each costs a decode table and
+     * a code table over the characters that followed it in training.
+     */
+    static final int MAX_CONTEXTS = 256;
+
+    /**
+     * Fewest occurrences of a preceding character before a table of its own
+     * pays for itself.
+     */
+    static final int MIN_CONTEXT_COUNT = 32;
+
+    /**
+     * Symbol for "did not follow this context in training". The order-0
+     * table's other symbols are the training corpus's characters numbered
+     * from 1 in char order; a context table's are the characters that
+     * followed that context, numbered from 1 in the same order.
+     */
+    static final int ESCAPE = 0;
+
+    // Longest code + escaped order-0 code any single char can take, in bytes
+    private static final int MAX_CHAR_BYTES = (2 * CodeTable.MAX_CODE_LENGTH + 7) / 8;
+
+    // Training alphabet: chars by symbol, and each char's symbol or 0
+    private final char[] alphabet;
+    private final int[] symbolOf;
+
+    private final CodeTable order0Codes;
+    private final DecodeTable order0Decoder;
+    private final int contexts;
+
+    // Tables for the char after each symbol: its context's, or order-0
+    private final CodeTable[] codesAfter;
+    private final DecodeTable[] decodersAfter;
+
+    // Order-0 symbols of each context table's symbols from 1, ascending, or
+    // null where the order-0 table is used
+    private final int[][] successorsAfter;
+
+    /**
+     * Creates the order-0 and per-context Encoding Maps using the character
+     * and character pair distributions in the given text corpus.
+     *
+     * @param corpus A String representing a message / document corpus with
+     *               distributions comparable to later messages
+     */
+    ContextHuffman(String corpus) {
+        int maxChar = 0;
+        for (int i = 0; i < corpus.length(); i++) {
+            maxChar = Math.max(maxChar, corpus.charAt(i));
+        }
+        int[] charCounts = new int[maxChar + 1];
+        for (int i = 0; i < corpus.length(); i++) {
+            charCounts[corpus.charAt(i)]++;
+        }
+
+        symbolOf = new int[maxChar + 1];
+        int symbols = 1;
+        for (int c = 0; c <= maxChar; c++) {
+            if (charCounts[c] != 0) {
+                symbolOf[c] = symbols++;
+            }
+        }
+        alphabet = new char[symbols];
+        int[] counts = new int[symbols];
+        for (int c = 0; c <= maxChar; c++) {
+            if (symbolOf[c] != 0) {
+                alphabet[symbolOf[c]] = (char) c;
+                counts[symbolOf[c]] = charCounts[c];
+            }
+        }
+        order0Codes = CodeTable.canonical(Huffman.limitedCodeLengths(counts, CodeTable.MAX_CODE_LENGTH));
+        order0Decoder = new DecodeTable(order0Codes);
+
+        // The most frequent characters become contexts
+        long[] byCount = new long[symbols - 1];
+        for (int symbol = 1; symbol < symbols; symbol++) {
+            byCount[symbol - 1] = (long) -counts[symbol] << 32 | symbol;
+        }
+        Arrays.sort(byCount);
+        int[] contextOf = new int[symbols];
+        Arrays.fill(contextOf, -1);
+        int contexts = 0;
+        while (contexts < Math.min(byCount.length, MAX_CONTEXTS) && -(byCount[contexts] >> 32) >= MIN_CONTEXT_COUNT) {
+            contextOf[(int) byCount[contexts]] = contexts;
+            contexts++;
+        }
+        this.contexts = contexts;
+
+        // Each context's successors, grouped by context
+        int[] groupStart = new int[contexts + 1];
+        for (int i = 1; i < corpus.length(); i++) {
+            int context = contextOf[symbolOf[corpus.charAt(i - 1)]];
+            if (context >= 0) {
+                groupStart[context + 1]++;
+            }
+        }
+        for (int context = 0; context < contexts; context++) {
+            groupStart[context + 1] += groupStart[context];
+        }
+        int[] grouped = new int[groupStart[contexts]];
+        int[] groupEnd = Arrays.copyOf(groupStart, contexts);
+        for (int i = 1; i < corpus.length(); i++) {
+            int context = contextOf[symbolOf[corpus.charAt(i - 1)]];
+            if (context >= 0) {
+                grouped[groupEnd[context]++] = symbolOf[corpus.charAt(i)];
+            }
+        }
+
+        // Each context's table only covers the successors it saw, so its
+        // size does not grow with the alphabet
+        CodeTable[] contextCodes = new CodeTable[contexts];
+        DecodeTable[] contextDecoders = new DecodeTable[contexts];
+        int[][] contextSuccessors = new int[contexts][];
+        int[] successorCounts = new int[symbols];
+        int[] seen = new int[symbols];
+        for (int context = 0; context < contexts; context++) {
+            int successors = 0;
+            for (int i = groupStart[context]; i < groupStart[context + 1]; i++) {
+                if (successorCounts[grouped[i]]++ == 0) {
+                    seen[successors++] = grouped[i];
+                }
+            }
+            int[] successorSymbols = Arrays.copyOf(seen, successors);
+            Arrays.sort(successorSymbols);
+            int[] pairs = new int[successors + 1];
+            for (int k = 0; k < successors; k++) {
+                pairs[k + 1] = successorCounts[successorSymbols[k]];
+                successorCounts[successorSymbols[k]] = 0;
+            }
+            // As in PPM method C, escape as often as new successors appeared
+            pairs[ESCAPE] = Math.max(1, successors);
+            contextSuccessors[context] = successorSymbols;
+            contextCodes[context] = CodeTable.canonical(Huffman.limitedCodeLengths(pairs, CodeTable.MAX_CODE_LENGTH));
+            contextDecoders[context] = new DecodeTable(contextCodes[context]);
+        }
+
+        // Symbol 0 stands for the start of a message, which has no context
+        codesAfter = new CodeTable[symbols];
+        decodersAfter = new DecodeTable[symbols];
+        successorsAfter = new int[symbols][];
+        for (int symbol = 0; symbol < symbols; symbol++) {
+            int context = contextOf[symbol];
+            codesAfter[symbol] = context < 0 ? order0Codes : contextCodes[context];
+            decodersAfter[symbol] = context < 0 ? order0Decoder : contextDecoders[context];
+            successorsAfter[symbol] = context < 0 ? null : contextSuccessors[context];
+        }
+    }
+
+    /**
+     * @return Number of contexts with a code table of their own.
+     */
+    int contextCount() {
+        return contexts;
+    }
+
+    // -----------------------------------------------
+    // Compression
+    // -----------------------------------------------
+
+    /**
+     * Compresses the given String message / text corpus.
+     *
+     * @param message String representing the corpus to compress.
+     * @return {@code byte[]} holding the compressed message, formatted as 2
+     * components: (1) a varint with the number of chars in the message, (2)
+     * the 0-padded bitstring, each char coded in the table of the char
+     * before it.
+     * @throws IllegalArgumentException if the message contains a character
+     *                                  absent from the training corpus
+     */
+    public byte[] compress(CharSequence message) {
+        int count = message.length();
+        byte[] result = new byte[HuffmanContainer.varintBytes(count) + count / 2 + MAX_CHAR_BYTES];
+        BitWriter writer = new BitWriter(result, HuffmanContainer.writeVarint(result, 0, count));
+        int previous = 0;
+        for (int i = 0; i < count; i++) {
+            writer.ensureCapacity(MAX_CHAR_BYTES);
+            char c = message.charAt(i);
+            int symbol = c < symbolOf.length ? symbolOf[c] : 0;
+            if (symbol == 0) {
+                throw new IllegalArgumentException("Character '" + c + "' is not in the encoding map");
+            }
+            CodeTable table = codesAfter[previous];
+            int[] successors = successorsAfter[previous];
+            int coded = successors == null ? symbol : Arrays.binarySearch(successors, symbol) + 1;
+            if (coded > 0) {
+                writer.write(table.codes[coded], table.lengths[coded]);
+            } else {
+                writer.write(table.codes[ESCAPE], table.lengths[ESCAPE]);
+                writer.write(order0Codes.codes[symbol], order0Codes.lengths[symbol]);
+            }
+            previous = symbol;
+        }
+        int end = writer.flush();
+        return Arrays.copyOf(writer.buffer(), end);
+    }
+
+    // -----------------------------------------------
+    // Decompression
+    // -----------------------------------------------
+
+    /**
+     * Decompresses a message produced by {@link #compress(CharSequence)}.
+     *
+     * @param compressed {@code byte[]} holding the compressed message
+     * @return Decompressed String representation of the message.
+     * @throws IllegalArgumentException if the message is corrupt or truncated
+     */
+    public String decompress(byte[] compressed) {
+        ByteBuffer in = ByteBuffer.wrap(compressed);
+        long count = HuffmanContainer.readVarint(in);
+        int pos = in.position();
+        if (count < 0 || count > (long) (compressed.length - pos) * 8) {
+            throw new IllegalArgumentException("Compressed message is truncated");
+        }
+        char[] result = new char[(int) count];
+        BitReader reader = new BitReader(compressed, pos, compressed.length);
+        DecodeTable decoder = order0Decoder;
+        int[] successors = null;
+        for (int i = 0; i < result.length; i++) {
+            int symbol = decoder.next(reader);
+            if (symbol == ESCAPE) {
+                symbol = order0Decoder.next(reader);
+            } else if (successors != null) {
+                symbol = successors[symbol - 1];
+            }
+            result[i] = alphabet[symbol];
+            decoder = decodersAfter[symbol];
+            successors = successorsAfter[symbol];
+        }
+        if (reader.overrun()) {
+            throw new IllegalArgumentException("Compressed message is truncated");
+        }
+        return new String(result);
+    }
+
+}
@@ -0,0 +1,91 @@
+package huffman;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class ContextHuffmanTests {
+
+    private static String logs(int lines, long seed) {
+        Random random = new Random(seed);
+        String[] levels = {"INFO", "INFO", "DEBUG", "WARN"};
+        String[] paths = {"/api/users", "/api/orders", "/health", "/login"};
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            text.append(1700000000000L + 37L * i).append(' ')
+                    .append(levels[random.nextInt(levels.length)])
+                    .append(" GET ").append(paths[random.nextInt(paths.length)])
+                    .append(" status=").append(random.nextInt(10) == 0 ? 500 : 200)
+                    .append(" latency=").append(random.nextInt(400)).append("ms\n");
+        }
+        return text.toString();
+    }
+
+    @Test
+    public void roundTrip_t0() {
+        ContextHuffman h = new ContextHuffman("ABBBCC");
+        // Too little training for any context table: pure order-0
+        assertEquals(0, h.contextCount());
+        assertEquals("", h.decompress(h.compress("")));
+        assertEquals("BABCBC", h.decompress(h.compress("BABCBC")));
+    }
+
+    @Test
+    public void roundTrip_t1() {
+        String corpus = logs(2000, 1);
+        ContextHuffman h = new ContextHuffman(corpus);
+        assertTrue(h.contextCount() > 0);
+        // Held-out traffic from the same source
+        String traffic = logs(2000, 2);
+        byte[] compressed = h.compress(traffic);
+        assertEquals(traffic, h.decompress(compressed));
+        // Order-1 codes beat the order-0 table trained on the same corpus
+        byte[] order0 = new Huffman(corpus).compressContainer(traffic);
+        assertTrue(compressed.length < order0.length * 0.8);
+    }
+
+    @Test
+    public void roundTrip_t2() {
+        StringBuilder corpus = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            corpus.append("ab");
+        }
+        corpus.append("c");
+        ContextHuffman h = new ContextHuffman(corpus.toString());
+        // "c" and "b" never followed "a" in training, so both are escaped
+        assertEquals("aacabbaab", h.decompress(h.compress("aacabbaab")));
+    }
+
+    @Test
+    public void roundTrip_t3() {
+        // A wide alphabet: every context sees only a few of its 20000 chars
+        Random random = new Random(3);
+        StringBuilder corpus = new StringBuilder();
+        for (int c = 0; c < 20000; c++) {
+            corpus.append((char) ('\u4e00' + c));
+        }
+        for (int i = 0; i < 100000; i++) {
+            char context = (char) ('\u4e00' + random.nextInt(ContextHuffman.MAX_CONTEXTS));
+            corpus.append(context).append((char) (context + 1 + random.nextInt(3)));
+        }
+        ContextHuffman h = new ContextHuffman(corpus.toString());
+        assertEquals(ContextHuffman.MAX_CONTEXTS, h.contextCount());
+        String text = corpus.substring(15000, 40000);
+        assertEquals(text, h.decompress(h.compress(text)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void compress_t0() {
+        ContextHuffman h = new ContextHuffman("ABBBCC");
+        h.compress("ABD");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decompress_t0() {
+        ContextHuffman h = new ContextHuffman(logs(100, 1));
+        byte[] compressed = h.compress(logs(100, 2));
+        h.decompress(java.util.Arrays.copyOf(compressed, compressed.length / 2));
+    }
+
+}
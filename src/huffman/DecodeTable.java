@@ -0,0 +1,201 @@
+package huffman;
+
+import java.nio.ByteBuffer;
+
+/*
+ * Author: Cooper LaRhette
+ */
+
+/**
+ * Flattened Huffman decoder. The next {@code tableBits} bits of input index
+ * straight into an array whose entries hold the decoded symbol and its code
+ * length, so any code no longer than tableBits resolves in one lookup. The
+ * rare longer codes escape to a small array-encoded trie that continues
+ * from the node reached after tableBits bits.
+ */
+final class DecodeTable {
+
+    /**
+     * Upper bound on the direct-lookup width: 2^11 int entries = 8 KB,
+     * which stays L1-resident alongside the input and output buffers.
+     */
+    static final int MAX_TABLE_BITS = 11;
+
+    final int tableBits;
+    final int maxLength;
+
+    // Entry layout: symbol << 8 | code length for direct hits,
+    // node << 8 | 0 for escapes, 0 for bit patterns no code starts with
+    private final int[] entries;
+
+    // Escape trie: children[2 * node + bit] is a node index when > 0,
+    // ~symbol for a leaf when < 0, and 0 where no code continues
+    private final int[] children;
+
+    /**
+     * Builds the lookup table (and, if needed, escape trie) for the given codes.
+     *
+     * @param table Code table to invert
+     */
+    DecodeTable(CodeTable table) {
+        maxLength = table.maxLength;
+        tableBits = Math.max(1, Math.min(maxLength, MAX_TABLE_BITS));
+        entries = new int[1 << tableBits];
+
+        int longCodes = 0;
+        for (int symbol = 0; symbol < table.lengths.length; symbol++) {
+            int length = table.lengths[symbol];
+            if (length == 0) {
+                continue;
+            }
+            if (length <= tableBits) {
+                int first = (int) table.codes[symbol] << (tableBits - length);
+                int entry = symbol << 8 | length;
+                for (int i = 0; i < 1 << (tableBits - length); i++) {
+                    entries[first + i] = entry;
+                }
+            } else {
+                longCodes += length;
+            }
+        }
+
+        children = new int[2 * (longCodes + 1)];
+        int nodeCount = 1;
+        for (int symbol = 0; symbol < table.lengths.length; symbol++) {
+            int length = table.lengths[symbol];
+            if (length <= tableBits) {
+                continue;
+            }
+            long code = table.codes[symbol];
+            int node = 0;
+            for (int depth = 0; depth < length - 1; depth++) {
+                int slot = 2 * node + (int) (code >>> (length - 1 - depth) & 1);
+                if (children[slot] == 0) {
+                    children[slot] = nodeCount++;
+                }
+                node = children[slot];
+                if (depth == tableBits - 1) {
+                    entries[(int) (code >>> (length - tableBits))] = node << 8;
+                }
+            }
+            children[2 * node + (int) (code & 1)] = ~symbol;
+        }
+    }
+
+    /**
+     * Decodes the next symbol from the reader.
+     *
+     * @param reader Source of the Huffman coded bitstring
+     * @return The decoded symbol.
+     * @throws IllegalArgumentException if the bitstring holds an unknown code
+     */
+    int next(BitReader reader) {
+        if (reader.available() < maxLength) {
+            reader.fill();
+        }
+        int entry = entries[reader.peek(tableBits)];
+        int length = entry & 0xFF;
+        if (length != 0) {
+            reader.skip(length);
+            return entry >>> 8;
+        }
+        return decodeLong(reader, entry);
+    }
+
+    /**
+     * Decodes exactly {@code count} symbols from the reader into out.
+     *
+     * @param reader Source of the Huffman coded bitstring
+     * @param out    Destination for the decoded chars
+     * @param offset Index in out of the first decoded char
+     * @param count  Number of symbols to decode
+     * @throws IllegalArgumentException if the bitstring is corrupt or truncated
+     */
+    void decode(BitReader reader, char[] out, int offset, int count) {
+        int end = offset + count;
+        for (int i = offset; i < end; i++) {
+            out[i] = (char) next(reader);
+        }
+        if (reader.overrun()) {
+            throw new IllegalArgumentException("Compressed message is truncated");
+        }
+    }
+
+    /**
+     * Decodes exactly {@code count} symbols spread round-robin over four
+     * readers into out. Each pass of the loop decodes one symbol from every
+     * stream; the four lookups do not depend on each other, so the CPU can
+     * overlap them instead of waiting on one code length at a time.
+     *
+     * @param streams Four sources, stream s holding symbols s, s + 4, ...
+     * @param out     Destination for the decoded chars
+     * @param offset  Index in out of the first decoded char
+     * @param count   Number of symbols to decode across all streams
+     * @throws IllegalArgumentException if a stream is corrupt or truncated
+     */
+    void decode(BitReader[] streams, char[] out, int offset, int count) {
+        BitReader s0 = streams[0], s1 = streams[1], s2 = streams[2], s3 = streams[3];
+        int end = offset + count;
+        int i = offset;
+        for (; i + 3 < end; i += 4) {
+            out[i] = (char) next(s0);
+            out[i + 1] = (char) next(s1);
+            out[i + 2] = (char) next(s2);
+            out[i + 3] = (char) next(s3);
+        }
+        for (int s = 0; i < end; i++, s++) {
+            out[i] = (char) next(streams[s]);
+        }
+        for (BitReader stream : streams) {
+            if (stream.overrun()) {
+                throw new IllegalArgumentException("Compressed message is truncated");
+            }
+        }
+    }
+
+    /**
+     * Decodes exactly {@code count} byte symbols from the reader into out,
+     * advancing its position.
+     *
+     * @param reader Source of the Huffman coded bitstring
+     * @param out    Destination for the decoded bytes, with room for count more
+     * @param count  Number of symbols to decode
+     * @throws IllegalArgumentException if the bitstring is corrupt or truncated
+     */
+    void decode(BitReader reader, ByteBuffer out, int count) {
+        for (int i = 0; i < count; i++) {
+            out.put((byte) next(reader));
+        }
+        if (reader.overrun()) {
+            throw new IllegalArgumentException("Compressed message is truncated");
+        }
+    }
+
+    /**
+     * Slow path for codes longer than tableBits: walks the escape trie one
+     * bit at a time from the node the lookup table landed on.
+     *
+     * @param reader Source positioned at the start of the code
+     * @param entry  Lookup table entry for the code's first tableBits bits
+     * @return The decoded symbol.
+     */
+    private int decodeLong(BitReader reader, int entry) {
+        if (entry == 0) {
+            throw new IllegalArgumentException("Compressed message contains an unknown code");
+        }
+        reader.skip(tableBits);
+        int node = entry >>> 8;
+        while (true) {
+            int next = children[2 * node + reader.peek(1)];
+            reader.skip(1);
+            if (next < 0) {
+                return ~next;
+            }
+            if (next == 0) {
+                throw new IllegalArgumentException("Compressed message contains an unknown code");
+            }
+            node = next;
+        }
+    }
+
+}
@@ -1,9 +1,33 @@
 package huffman;
 
-import java.io.ByteArrayOutputStream;
-import java.util.HashMap;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
-import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.IntConsumer;
 
 /*
  * Author: Cooper LaRhette
@@ -12,7 +36,10 @@ import java.util.PriorityQueue;
 /**
  * Huffman instances provide reusable Huffman Encoding Maps for
  * compressing and decompressing text corpi with comparable
- * distributions of characters.
+ * distributions of characters. An instance is frozen once constructed:
+ * it compresses and decompresses through final, array-backed code and
+ * decode tables that are only ever read, and keeps no per-call state, so
+ * a single instance can safely be shared by any number of threads.
  */
 public class Huffman {
 
@@ -20,12 +47,17 @@ public class Huffman {
     // Construction
     // -----------------------------------------------
 
-    private HuffNode trieRoot;
-    protected Map<Character, String> encodingMap;
+    // Unmodifiable view of the code table, for inspection only
+    protected final Map<Character, String> encodingMap;
+    private final CodeTable codeTable;
+    private final DecodeTable decodeTable;
+    private final HuffmanMetrics metrics;
 
     /**
-     * Creates the Huffman Trie and Encoding Map using the character
-     * distributions in the given text corpus
+     * Creates the Encoding Map using the character distributions in the
+     * given text corpus. Codes are assigned canonically from the Huffman
+     * code lengths, so the model can later be rebuilt from those lengths
+     * alone (see {@link #exportModel()}).
      *
      * @param corpus A String representing a message / document corpus
      *               with distributions over characters that are implicitly used
@@ -34,75 +66,635 @@ public class Huffman {
      *               differ.
      */
     Huffman(String corpus) {
-        HashMap<Character, Integer> charCounts = new HashMap<>();
-        for (int i = 0; i < corpus.length(); i++) {
-            Character currChar = corpus.charAt(i);
-            charCounts.merge(currChar, 1, (a, b) -> a + b);
+        this(countChars(corpus, 0, corpus.length()), CodeTable.MAX_CODE_LENGTH);
+    }
+
+    /**
+     * Creates the Encoding Map using the character distributions in the
+     * given text corpus, counting characters across the
+     * corpus concurrently on the given executor. Produces the same Encoding
+     * Map as {@link #Huffman(String)}.
+     *
+     * @param corpus   A String representing a message / document corpus
+     * @param executor Executor to count chunks of the corpus on, or null to
+     *                 count on the calling thread
+     */
+    Huffman(String corpus, ExecutorService executor) {
+        this(countChars(corpus, executor), CodeTable.MAX_CODE_LENGTH);
+    }
+
+    /**
+     * Creates the Encoding Map using the character distributions in the
+     * given text corpus, with no code longer than maxCodeLength bits. Bounding
+     * the code length bounds the decoder's tables and its worst case per
+     * character, at the cost of slightly longer output than an unrestricted
+     * code when the limit actually binds.
+     *
+     * @param corpus        A String representing a message / document corpus
+     * @param maxCodeLength Longest code to allow, e.g. 15; the corpus must
+     *                      have at most 2^maxCodeLength distinct characters
+     * @throws IllegalArgumentException if no code within the limit can
+     *                                  represent every character of the corpus
+     */
+    Huffman(String corpus, int maxCodeLength) {
+        this(countChars(corpus, 0, corpus.length()), maxCodeLength);
+    }
+
+    /**
+     * Creates the Encoding Map for the given character distribution.
+     *
+     * @param charCounts    Number of occurrences of each char, indexed by char value
+     * @param maxCodeLength Longest code to allow
+     */
+    private Huffman(int[] charCounts, int maxCodeLength) {
+        this(CodeTable.canonical(limitedCodeLengths(charCounts, maxCodeLength)), charCounts);
+    }
+
+    /**
+     * Creates the Encoding Map and decoder for an already built code table.
+     *
+     * @param codeTable  Code table to compress and decompress with
+     * @param charCounts Training corpus histogram the table was built from,
+     *                   or null for a loaded model
+     */
+    private Huffman(CodeTable codeTable, int[] charCounts) {
+        this.codeTable = codeTable;
+        this.decodeTable = new DecodeTable(codeTable);
+        this.encodingMap = Collections.unmodifiableMap(codeTable.toEncodingMap());
+        this.metrics = new HuffmanMetrics(codeTable, charCounts);
+    }
+
+    /**
+     * Minimum number of chars worth giving their own histogram when counting
+     * in parallel; below this, merging the 256 KB histograms costs more than
+     * the counting it spreads out.
+     */
+    private static final int MIN_COUNT_CHUNK = 1 << 20;
+
+    /**
+     * Counts the occurrences of every char in corpus[from, to) into a flat
+     * histogram, without boxing.
+     *
+     * @param corpus Text to count
+     * @param from   Index of the first char (inclusive)
+     * @param to     Index of the last char (exclusive)
+     * @return Histogram indexed by char value.
+     */
+    static int[] countChars(String corpus, int from, int to) {
+        int[] counts = new int[CodeTable.MAX_SYMBOLS];
+        for (int i = from; i < to; i++) {
+            counts[corpus.charAt(i)]++;
         }
-        PriorityQueue<HuffNode> trieQ = new PriorityQueue<>(charCounts.size(), HuffNode::compareTo);
-        for (Map.Entry<Character, Integer> entry : charCounts.entrySet()) {
-            trieQ.add(new HuffNode(entry.getKey(), entry.getValue()));
+        return counts;
+    }
+
+    /**
+     * Counts the occurrences of every char in the corpus, splitting it into
+     * chunks counted concurrently into private histograms that are then
+     * summed.
+     *
+     * @param corpus   Text to count
+     * @param executor Executor to count chunks on, or null to count on the
+     *                 calling thread
+     * @return Histogram indexed by char value.
+     */
+    static int[] countChars(String corpus, ExecutorService executor) {
+        int length = corpus.length();
+        int chunks = Math.max(1, Math.min(length / MIN_COUNT_CHUNK, Runtime.getRuntime().availableProcessors()));
+        if (executor == null || chunks == 1) {
+            return countChars(corpus, 0, length);
         }
-        while (trieQ.size() > 1) {
-            HuffNode left = trieQ.poll();
-            HuffNode right = trieQ.poll();
-            HuffNode newNode = new HuffNode('\0', left.count + right.count);
-            newNode.left = left;
-            newNode.right = right;
-            trieQ.add(newNode);
+        int[][] partials = new int[chunks][];
+        forEachBlock(chunks, executor, c -> partials[c] = countChars(corpus,
+                (int) ((long) length * c / chunks), (int) ((long) length * (c + 1) / chunks)));
+        int[] counts = partials[0];
+        for (int c = 1; c < chunks; c++) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += partials[c][i];
+            }
         }
-        trieRoot = trieQ.poll();
-        encodingMap = new HashMap<>(charCounts.size());
-        encodeChar(trieRoot, "");
+        return counts;
     }
 
     /**
-     * Fills encodingMap used to compress by traversing the Huffman Trie.
+     * Computes Huffman code lengths for the given character distribution.
+     * Also used for the other alphabets in this package, whose symbols are
+     * ints rather than chars.
      *
-     * @param root      Root of the trie.
-     * @param bitString bitString that will start out as an empty String and be used for each binary encoding for each character.
+     * @param charCounts Number of occurrences of each char, indexed by char value
+     * @return Code length of each character, indexed by character, 0 for
+     * characters absent from the corpus.
      */
-    private void encodeChar(HuffNode root, String bitString) {
-        if (root.left == null && root.right == null) {
-            encodingMap.put(root.character, bitString);
-        } else {
-            encodeChar(root.left, bitString + "0");
-            encodeChar(root.right, bitString + "1");
+    static byte[] codeLengths(int[] charCounts) {
+        return codeLengths(sortedByCount(charCounts));
+    }
+
+    /**
+     * @param counts Number of occurrences of each symbol, indexed by symbol
+     * @return Every used symbol as {@code count << 32 | symbol}, sorted by
+     * ascending count.
+     */
+    private static long[] sortedByCount(int[] counts) {
+        int n = 0;
+        for (int count : counts) {
+            if (count != 0) {
+                n++;
+            }
+        }
+        long[] sorted = new long[n];
+        for (int symbol = 0, i = 0; symbol < counts.length; symbol++) {
+            if (counts[symbol] != 0) {
+                sorted[i++] = (long) counts[symbol] << 32 | symbol;
+            }
         }
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * Computes Huffman code lengths without building a trie of node objects,
+     * using Moffat and Katajainen's in-place method. Leaves sorted by weight
+     * and the internal nodes formed from them both come out in ascending
+     * order, so the two queues of the classic two-queue construction can
+     * share one array: node i is formed in slot i, whose leaf was already
+     * consumed. Each slot then holds a node's weight, its parent's index,
+     * and finally its depth, from which the leaf depths follow level by
+     * level. Allocates only the weight array and the result.
+     *
+     * @param sorted Used symbols as {@code count << 32 | symbol}, by ascending count
+     * @return Code length of each symbol, indexed by symbol, 0 for unused symbols.
+     */
+    private static byte[] codeLengths(long[] sorted) {
+        int n = sorted.length;
+        int maxSymbol = 0;
+        for (long key : sorted) {
+            maxSymbol = Math.max(maxSymbol, (int) key);
+        }
+        byte[] lengths = new byte[maxSymbol + 1];
+        if (n < 2) {
+            // A single-character corpus still needs a 1-bit code
+            if (n == 1) {
+                lengths[(int) sorted[0]] = 1;
+            }
+            return lengths;
+        }
+        long[] nodes = new long[n];
+        for (int i = 0; i < n; i++) {
+            nodes[i] = sorted[i] >>> 32;
+        }
+
+        // Merge the two lightest of the remaining leaves and internal nodes;
+        // a consumed internal node's slot takes the index of its parent
+        int leaf = 0, root = 0;
+        for (int next = 0; next < n - 1; next++) {
+            if (leaf >= n || (root < next && nodes[root] < nodes[leaf])) {
+                nodes[next] = nodes[root];
+                nodes[root++] = next;
+            } else {
+                nodes[next] = nodes[leaf++];
+            }
+            if (leaf >= n || (root < next && nodes[root] < nodes[leaf])) {
+                nodes[next] += nodes[root];
+                nodes[root++] = next;
+            } else {
+                nodes[next] += nodes[leaf++];
+            }
+        }
+
+        // Parents always follow their children, so walking down from the
+        // root turns parent indices into depths
+        nodes[n - 2] = 0;
+        for (int next = n - 3; next >= 0; next--) {
+            nodes[next] = nodes[(int) nodes[next]] + 1;
+        }
+
+        // Every slot not taken by an internal node at a depth is a leaf
+        // there; the heaviest leaves get the shallowest depths
+        int available = 1, depth = 0;
+        root = n - 2;
+        int next = n - 1;
+        while (available > 0) {
+            int used = 0;
+            while (root >= 0 && nodes[root] == depth) {
+                used++;
+                root--;
+            }
+            while (available > used) {
+                nodes[next--] = depth;
+                available--;
+            }
+            available = 2 * used;
+            depth++;
+        }
+        for (int i = 0; i < n; i++) {
+            lengths[(int) sorted[i]] = (byte) Math.min(nodes[i], Byte.MAX_VALUE);
+        }
+        return lengths;
+    }
+
+    /**
+     * Computes optimal code lengths subject to a maximum length, using the
+     * package-merge algorithm. When the unrestricted Huffman code already
+     * fits within the limit its lengths are used unchanged.
+     *
+     * @param counts    Number of occurrences of each symbol, indexed by symbol
+     * @param maxLength Longest code to allow, in [1, CodeTable.MAX_CODE_LENGTH]
+     * @return Code length of each symbol, indexed by symbol, 0 for unused symbols.
+     * @throws IllegalArgumentException if more than 2^maxLength symbols are used
+     */
+    static byte[] limitedCodeLengths(int[] counts, int maxLength) {
+        if (maxLength < 1 || maxLength > CodeTable.MAX_CODE_LENGTH) {
+            throw new IllegalArgumentException("Code length limit " + maxLength + " is out of range");
+        }
+        long[] sorted = sortedByCount(counts);
+        byte[] lengths = codeLengths(sorted);
+        int longest = 0;
+        for (byte length : lengths) {
+            longest = Math.max(longest, length);
+        }
+        if (longest <= maxLength) {
+            return lengths;
+        }
+
+        int n = sorted.length;
+        if (maxLength < 31 && n > 1 << maxLength) {
+            throw new IllegalArgumentException(n + " symbols cannot fit in codes of at most " + maxLength + " bits");
+        }
+        long[] leaves = new long[n];
+        for (int i = 0; i < n; i++) {
+            leaves[i] = sorted[i] >>> 32;
+        }
+
+        // Level maxLength holds just the leaves; each shallower level merges
+        // the leaves with packages of adjacent pairs from the level below
+        boolean[][] isLeaf = new boolean[maxLength + 1][];
+        long[] below = leaves;
+        isLeaf[maxLength] = new boolean[n];
+        Arrays.fill(isLeaf[maxLength], true);
+        for (int level = maxLength - 1; level >= 1; level--) {
+            int packages = below.length / 2;
+            long[] merged = new long[n + packages];
+            isLeaf[level] = new boolean[merged.length];
+            int leaf = 0, pkg = 0;
+            for (int i = 0; i < merged.length; i++) {
+                long pkgWeight = pkg < packages ? below[2 * pkg] + below[2 * pkg + 1] : Long.MAX_VALUE;
+                if (leaf < n && leaves[leaf] <= pkgWeight) {
+                    merged[i] = leaves[leaf++];
+                    isLeaf[level][i] = true;
+                } else {
+                    merged[i] = pkgWeight;
+                    pkg++;
+                }
+            }
+            below = merged;
+        }
+
+        // Select the cheapest 2n - 2 items at level 1; every leaf selected at a
+        // level adds a bit to that symbol's code, every package selects two
+        // items from the level below
+        Arrays.fill(lengths, (byte) 0);
+        int selected = 2 * n - 2;
+        for (int level = 1; level <= maxLength && selected > 0; level++) {
+            int leavesTaken = 0;
+            for (int i = 0; i < selected; i++) {
+                if (isLeaf[level][i]) {
+                    leavesTaken++;
+                }
+            }
+            for (int i = 0; i < leavesTaken; i++) {
+                lengths[(int) sorted[i]]++;
+            }
+            selected = 2 * (selected - leavesTaken);
+        }
+        return lengths;
+    }
+
+    // -----------------------------------------------
+    // Model Serialization
+    // -----------------------------------------------
+
+    /**
+     * Serializes this instance's Encoding Map as its code lengths, which is
+     * all a canonical Huffman code needs to be rebuilt. Typically a few
+     * hundred bytes; write it alongside compressed data or store it to skip
+     * retraining at startup.
+     *
+     * @return {@code byte[]} holding the model, readable by {@link #loadModel(byte[])}.
+     */
+    public byte[] exportModel() {
+        return codeTable.toBytes();
+    }
+
+    /**
+     * Rebuilds a Huffman instance from a model written by {@link #exportModel()},
+     * without a training corpus. The result compresses and decompresses
+     * exactly like the instance that exported it.
+     *
+     * @param model {@code byte[]} holding the serialized model
+     * @return Huffman instance for the model.
+     * @throws IllegalArgumentException if the model is malformed or its code
+     *                                  lengths do not form a prefix code
+     */
+    public static Huffman loadModel(byte[] model) {
+        return new Huffman(CodeTable.fromBytes(model), null);
+    }
+
+    // -----------------------------------------------
+    // Metrics
+    // -----------------------------------------------
+
+    /**
+     * @return Live statistics on this instance's traffic: volumes in and out,
+     * average code length against the model's, chars the model lacks, and
+     * call latencies. Shared by every thread using this instance.
+     */
+    public HuffmanMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Measures message[from, to) through the code table, first counting the
+     * chars the model lacks if it cannot encode them.
+     *
+     * @see CodeTable#encodedBits(CharSequence, int, int)
+     */
+    long encodedBits(CharSequence message, int from, int to) {
+        try {
+            return codeTable.encodedBits(message, from, to);
+        } catch (IllegalArgumentException e) {
+            metrics.recordUnseen(codeTable.unseenChars(message, from, to));
+            throw e;
+        }
+    }
+
+    /**
+     * Writes the codes for message[from, to) to the given writer.
+     *
+     * @param message Text to encode, already measured by
+     *                {@link #encodedBits(CharSequence, int, int)}
+     * @param from    Index of the first char (inclusive)
+     * @param to      Index of the last char (exclusive)
+     * @param writer  Destination of the encoded bits
+     */
+    void encode(CharSequence message, int from, int to, BitWriter writer) {
+        codeTable.encode(message, from, to, writer);
     }
 
     // -----------------------------------------------
     // Compression
     // -----------------------------------------------
 
+    /**
+     * Longest message the legacy one-byte-header format can describe.
+     */
+    static final int LEGACY_MAX_LENGTH = 255;
+
     /**
      * Compresses the given String message / text corpus into its Huffman coded
-     * bitstring, as represented by an array of bytes. Uses the encodingMap
-     * field generated during construction for this purpose.
+     * bitstring, as represented by an array of bytes, in the legacy format.
+     * Uses the code table generated during construction for this
+     * purpose. See {@link #compressContainer(String)} for messages of any length.
      *
-     * @param message String representing the corpus to compress.
+     * @param message String representing the corpus to compress, of at most
+     *                {@link #LEGACY_MAX_LENGTH} characters.
      * @return {@code byte[]} representing the compressed corpus with the
      * Huffman coded bytecode. Formatted as 3 components: (1) the
      * first byte contains the number of characters in the message,
      * (2) the bitstring containing the message itself, (3) possible
      * 0-padding on the final byte.
+     * @throws IllegalArgumentException if the message is too long for the
+     *                                  legacy format or contains a character
+     *                                  absent from the training corpus
      */
     public byte[] compress(String message) {
-        ByteArrayOutputStream result = new ByteArrayOutputStream();
-        StringBuilder tempBitString = new StringBuilder();
-        for (int i = 0; i < message.length(); i++) {
-            tempBitString.append(encodingMap.get(message.charAt(i)));
+        if (message.length() > LEGACY_MAX_LENGTH) {
+            throw new IllegalArgumentException("Legacy format holds at most " + LEGACY_MAX_LENGTH
+                    + " characters; use compressContainer");
         }
-        result.write(message.length());
-        if (tempBitString.length() % 8 != 0) {
-            for (int i = 0; i < tempBitString.length() % 8; i++) {
-                tempBitString.append("0");
+        long start = System.nanoTime();
+        long bits = encodedBits(message, 0, message.length());
+        byte[] result = new byte[1 + (int) ((bits + 7) >>> 3)];
+        result[0] = (byte) message.length();
+        BitWriter writer = new BitWriter(result, 1);
+        codeTable.encode(message, 0, message.length(), writer);
+        writer.flush();
+        metrics.recordEncoded(message.length(), bits);
+        metrics.recordCompress(result.length, System.nanoTime() - start);
+        return result;
+    }
+
+    /**
+     * Compresses the given String message / text corpus of any length into a
+     * versioned, checksummed container of independently decodable blocks.
+     *
+     * @param message String representing the corpus to compress.
+     * @return {@code byte[]} holding the container, formatted as described
+     * in {@link HuffmanContainer}.
+     * @throws IllegalArgumentException if the message contains a character
+     *                                  absent from the training corpus
+     */
+    public byte[] compressContainer(String message) {
+        return compressContainer(message, null);
+    }
+
+    /**
+     * Compresses the given String message / text corpus of any length into a
+     * versioned, checksummed container, encoding its blocks concurrently on
+     * the given executor. The code table is only read, so the blocks share
+     * it; each writes to its own slice of the result. The output is identical
+     * to {@link #compressContainer(String)}.
+     *
+     * @param message  String representing the corpus to compress.
+     * @param executor Executor to encode blocks on, e.g.
+     *                 {@link java.util.concurrent.ForkJoinPool#commonPool()},
+     *                 or null to encode them on the calling thread
+     * @return {@code byte[]} holding the container, formatted as described
+     * in {@link HuffmanContainer}.
+     * @throws IllegalArgumentException if the message contains a character
+     *                                  absent from the training corpus
+     */
+    public byte[] compressContainer(String message, ExecutorService executor) {
+        return compressContainer(message, executor, HuffmanContainer.FLAG_INDEXED);
+    }
+
+    /**
+     * Compresses the given String message / text corpus into a container of
+     * interleaved blocks; see {@link #compressInterleaved(String, ExecutorService)}.
+     *
+     * @param message String representing the corpus to compress.
+     * @return {@code byte[]} holding the container.
+     */
+    public byte[] compressInterleaved(String message) {
+        return compressInterleaved(message, null);
+    }
+
+    /**
+     * Compresses the given String message / text corpus into a container
+     * whose blocks each spread their characters over 4 interleaved
+     * bitstreams. Costs 12 bytes per block over
+     * {@link #compressContainer(String)}, in exchange for faster decoding:
+     * the decoder works through the 4 streams in one loop, so their lookups
+     * overlap rather than forming a single serial chain. Every decompress
+     * method reads either format.
+     *
+     * @param message  String representing the corpus to compress.
+     * @param executor Executor to encode blocks on, or null to encode them
+     *                 on the calling thread
+     * @return {@code byte[]} holding the container, formatted as described
+     * in {@link HuffmanContainer}.
+     * @throws IllegalArgumentException if the message contains a character
+     *                                  absent from the training corpus
+     */
+    public byte[] compressInterleaved(String message, ExecutorService executor) {
+        return compressContainer(message, executor, HuffmanContainer.FLAG_INDEXED | HuffmanContainer.FLAG_INTERLEAVED);
+    }
+
+    /**
+     * Compresses the given String message / text corpus into a container
+     * that supports random access: besides the block index, every block
+     * records the bit offset of every 1024th char, so
+     * {@link #decompressRange(byte[], long, int)} can decode a range from
+     * the nearest of these sync points instead of decoding the whole
+     * message, or even the whole block. Costs 4 bytes per 1024 chars over
+     * {@link #compressContainer(String)}; every decompress method reads
+     * either format.
+     *
+     * @param message String representing the corpus to compress.
+     * @return {@code byte[]} holding the container, formatted as described
+     * in {@link HuffmanContainer}.
+     * @throws IllegalArgumentException if the message contains a character
+     *                                  absent from the training corpus
+     */
+    public byte[] compressSeekable(String message) {
+        return compressContainer(message, null, HuffmanContainer.FLAG_INDEXED | HuffmanContainer.FLAG_SEEKABLE);
+    }
+
+    /**
+     * @param flags Container flags; FLAG_INDEXED must be set
+     * @see #compressContainer(String, ExecutorService)
+     */
+    private byte[] compressContainer(String message, ExecutorService executor, int flags) {
+        return compressContainer(message, executor, flags, 0);
+    }
+
+    /**
+     * Compresses the message into a container that starts prefixBytes into
+     * the returned array, leaving room for a caller's own header in front.
+     *
+     * @param prefixBytes Bytes to leave free before the container
+     * @see #compressContainer(String)
+     */
+    byte[] compressContainer(String message, int prefixBytes) {
+        return compressContainer(message, null, HuffmanContainer.FLAG_INDEXED, prefixBytes);
+    }
+
+    /**
+     * @param flags       Container flags; FLAG_INDEXED must be set
+     * @param prefixBytes Bytes to leave free before the container
+     * @see #compressContainer(String, ExecutorService)
+     */
+    private byte[] compressContainer(String message, ExecutorService executor, int flags, int prefixBytes) {
+        long start = System.nanoTime();
+        boolean interleaved = (flags & HuffmanContainer.FLAG_INTERLEAVED) != 0;
+        boolean seekable = (flags & HuffmanContainer.FLAG_SEEKABLE) != 0;
+        int blockChars = HuffmanContainer.DEFAULT_BLOCK_CHARS;
+        int syncChars = HuffmanContainer.DEFAULT_SYNC_CHARS;
+        int length = message.length();
+        int[] sizes = new int[(length + blockChars - 1) / blockChars];
+        int[] blockBytes = new int[sizes.length];
+        long[] bits = new long[sizes.length];
+        try {
+            forEachBlock(sizes.length, executor, b -> {
+                int from = b * blockChars, to = Math.min(length, from + blockChars);
+                if (interleaved) {
+                    sizes[b] = HuffmanContainer.interleavedBytes(codeTable, message, from, to);
+                    bits[b] = 8L * (sizes[b] - HuffmanContainer.JUMP_TABLE_BYTES);
+                } else {
+                    bits[b] = codeTable.encodedBits(message, from, to);
+                    sizes[b] = (int) ((bits[b] + 7) >>> 3);
+                    if (seekable) {
+                        sizes[b] += HuffmanContainer.SYNC_POINT_BYTES * HuffmanContainer.syncPoints(to - from, syncChars);
+                    }
+                }
+                blockBytes[b] = HuffmanContainer.blockBytes(to - from, sizes[b]);
+            });
+        } catch (IllegalArgumentException e) {
+            // Over the whole message, however many blocks ran before the failure
+            metrics.recordUnseen(codeTable.unseenChars(message, 0, length));
+            throw e;
+        }
+        // Only once every block is known to encode, so a failed call adds no throughput
+        long totalBits = 0;
+        for (long blockBits : bits) {
+            totalBits += blockBits;
+        }
+        metrics.recordEncoded(length, totalBits);
+
+        int headerBytes = HuffmanContainer.headerBytes(flags, blockChars, length, syncChars, blockBytes);
+        int[] positions = new int[sizes.length];
+        long total = (long) prefixBytes + headerBytes;
+        for (int b = 0; b < sizes.length; b++) {
+            positions[b] = (int) Math.min(total, Integer.MAX_VALUE);
+            total += blockBytes[b];
+        }
+        if (total + 1 > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Message is too large for a single array; use compress(InputStream, OutputStream)");
+        }
+
+        byte[] result = new byte[(int) total + 1];
+        HuffmanContainer.writeHeader(result, prefixBytes, flags, blockChars, length, syncChars, blockBytes);
+        forEachBlock(sizes.length, executor, b -> {
+            int from = b * blockChars, to = Math.min(length, from + blockChars);
+            if (interleaved) {
+                HuffmanContainer.writeInterleavedBlock(codeTable, message, from, to, sizes[b], result, positions[b]);
+            } else if (seekable) {
+                HuffmanContainer.writeSeekableBlock(codeTable, message, from, to, syncChars, sizes[b], result, positions[b]);
+            } else {
+                HuffmanContainer.writeBlock(codeTable, message, from, to, sizes[b], result, positions[b]);
             }
+        });
+        result[(int) total] = 0;
+        metrics.recordCompress(result.length - prefixBytes, System.nanoTime() - start);
+        return result;
+    }
+
+    /**
+     * Runs task for every block index in [0, blocks), on the given executor
+     * if there is one, and waits for all of them.
+     *
+     * @param blocks   Number of blocks
+     * @param executor Executor to run on, or null to run on the calling thread
+     * @param task     Work for a single block, given its index
+     * @throws IllegalStateException if interrupted while waiting
+     */
+    private static void forEachBlock(int blocks, ExecutorService executor, IntConsumer task) {
+        if (executor == null || blocks < 2) {
+            for (int b = 0; b < blocks; b++) {
+                task.accept(b);
+            }
+            return;
         }
-        for (int i = 0; i < tempBitString.length(); i += 8) {
-            result.write(Integer.parseInt(tempBitString.substring(i, i + 8), 2));
+        List<Callable<Void>> tasks = new ArrayList<>(blocks);
+        for (int b = 0; b < blocks; b++) {
+            int block = b;
+            tasks.add(() -> {
+                task.accept(block);
+                return null;
+            });
+        }
+        try {
+            for (Future<Void> result : executor.invokeAll(tasks)) {
+                result.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while processing blocks", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
         }
-        return result.toByteArray();
     }
 
 
@@ -112,78 +704,545 @@ public class Huffman {
 
     /**
      * Decompresses the given compressed array of bytes into their original,
-     * String representation. Uses the trieRoot field (the Huffman Trie) that
-     * generated the compressed message during decoding.
+     * String representation. Uses the decodeTable field (the flattened Huffman
+     * Trie) that generated the compressed message during decoding.
      *
      * @param compressedMsg {@code byte[]} representing the compressed corpus with the
-     *                      Huffman coded bytecode. Formatted as 3 components: (1) the
-     *                      first byte contains the number of characters in the message,
-     *                      (2) the bitstring containing the message itself, (3) possible
-     *                      0-padding on the final byte.
+     *                      Huffman coded bytecode, in the legacy format. Formatted as
+     *                      3 components: (1) the first byte contains the number of
+     *                      characters in the message, (2) the bitstring containing the
+     *                      message itself, (3) possible 0-padding on the final byte.
      * @return Decompressed String representation of the compressed bytecode message.
+     * @throws IllegalArgumentException if the message is empty, or the
+     *                                  bitstring is corrupt or truncated
      */
     public String decompress(byte[] compressedMsg) {
-        String bitString = buildBitString(compressedMsg);
-        StringBuilder result = new StringBuilder();
-        HuffNode currNode = trieRoot;
-        for (int i = 0; i < bitString.length() && result.length() < compressedMsg[0]; i++) {
-            if (currNode.left == null && currNode.right == null) {
-                result.append(currNode.character);
-                currNode = trieRoot;
-            }
-            if (bitString.charAt(i) == '0') {
-                currNode = currNode.left;
-            } else {
-                currNode = currNode.right;
+        long start = System.nanoTime();
+        // Even an empty message carries its length byte
+        if (compressedMsg.length == 0) {
+            throw new IllegalArgumentException("Compressed message is missing its length byte");
+        }
+        char[] result = new char[compressedMsg[0] & 0xFF];
+        decodeTable.decode(new BitReader(compressedMsg, 1, compressedMsg.length), result, 0, result.length);
+        metrics.recordDecompress(compressedMsg.length, result.length, System.nanoTime() - start);
+        return new String(result);
+    }
+
+    /**
+     * Decompresses a container produced by {@link #compressContainer(String)}
+     * into its original String representation.
+     *
+     * @param container {@code byte[]} holding the container
+     * @return Decompressed String representation of the container's message.
+     * @throws IllegalArgumentException if the container is malformed, truncated,
+     *                                  fails a checksum or is too large for a String
+     */
+    public String decompressContainer(byte[] container) {
+        return decompressContainer(container, null);
+    }
+
+    /**
+     * Decompresses a container produced by {@link #compressContainer(String)}
+     * into its original String representation, decoding its blocks
+     * concurrently on the given executor when the container has a block index.
+     *
+     * @param container {@code byte[]} holding the container
+     * @param executor  Executor to decode blocks on, or null to decode them on
+     *                  the calling thread
+     * @return Decompressed String representation of the container's message.
+     * @throws IllegalArgumentException if the container is malformed, truncated,
+     *                                  fails a checksum or is too large for a String
+     */
+    public String decompressContainer(byte[] container, ExecutorService executor) {
+        return decompressContainer(container, 0, executor);
+    }
+
+    /**
+     * @param offset Index in container of the container's first byte
+     * @see #decompressContainer(byte[], ExecutorService)
+     */
+    String decompressContainer(byte[] container, int offset, ExecutorService executor) {
+        long start = System.nanoTime();
+        char[] result = decodeContainer(container, offset, executor);
+        metrics.recordDecompress(container.length - offset, result.length, System.nanoTime() - start);
+        return new String(result);
+    }
+
+    /**
+     * @return The container's message.
+     * @see #decompressContainer(byte[], int, ExecutorService)
+     */
+    private char[] decodeContainer(byte[] container, int offset, ExecutorService executor) {
+        try {
+            HuffmanContainer blocks = new HuffmanContainer(container, offset);
+            if (blocks.symbolCount < 0 || blocks.symbolCount > Integer.MAX_VALUE - 8) {
+                throw new IllegalArgumentException("Container does not hold a single String message");
+            }
+            char[] result = new char[(int) blocks.symbolCount];
+            if (blocks.blockPositions != null) {
+                forEachBlock(blocks.indexedBlocks(), executor, b -> decodeBlock(blocks, b, result));
+                return result;
+            }
+            int decoded = 0;
+            while (blocks.nextBlock()) {
+                if (blocks.blockCount > result.length - decoded) {
+                    throw new IllegalArgumentException("Container holds more characters than its header declares");
+                }
+                decodeCurrentBlock(blocks, result, decoded);
+                decoded += blocks.blockCount;
+            }
+            if (decoded != result.length) {
+                throw new IllegalArgumentException("Container holds fewer characters than its header declares");
+            }
+            return result;
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Decompresses only the chars [from, from + length) of a container
+     * produced by {@link #compressContainer(String)} or one of its variants,
+     * without decoding the rest: the block index locates the blocks holding
+     * the range, and in a container from {@link #compressSeekable(String)}
+     * decoding starts at the last sync point before the range. A point
+     * lookup thus costs one block's checksum and at most 1024 decoded chars,
+     * however large the container, though the header and index are parsed
+     * anew by every call. For containers stored in files, or looked up
+     * repeatedly, use a {@link HuffmanRangeReader}, which parses them once
+     * and reads only the blocks it needs.
+     *
+     * @param container {@code byte[]} holding the container
+     * @param from      Index in the message of the first char to decode
+     * @param length    Number of chars to decode
+     * @return The chars of the container's message in the given range.
+     * @throws IllegalArgumentException if the container has no block index,
+     *                                  the range is out of bounds, or a block
+     *                                  it touches is malformed or corrupt
+     */
+    public String decompressRange(byte[] container, long from, int length) {
+        long start = System.nanoTime();
+        try {
+            HuffmanContainer blocks = new HuffmanContainer(container);
+            if (blocks.blockPositions == null) {
+                throw new IllegalArgumentException("Container has no block index; use decompressContainer");
+            }
+            if (from < 0 || length < 0 || from > blocks.symbolCount - length) {
+                throw new IllegalArgumentException("Range [" + from + ", " + (from + length)
+                        + ") is outside the container's " + blocks.symbolCount + " characters");
+            }
+            char[] result = new char[length];
+            long bytesRead = 0;
+            int decoded = 0;
+            while (decoded < length) {
+                long index = from + decoded;
+                int b = (int) (index / blocks.blockChars);
+                HuffmanContainer block = blocks.seek(b);
+                if (!block.nextBlock() || block.blockCount != block.indexedBlockChars(b)) {
+                    throw new IllegalArgumentException("Container block " + b + " does not match its index");
+                }
+                bytesRead += HuffmanContainer.blockBytes(block.blockCount, block.blockSize);
+                int first = (int) (index - (long) b * blocks.blockChars);
+                int count = Math.min(length - decoded, block.blockCount - first);
+                decodeCurrentBlock(block, first, result, decoded, count);
+                decoded += count;
+            }
+            metrics.recordDecompress(bytesRead, length, System.nanoTime() - start);
+            return new String(result);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Decodes one block of an indexed container into its slice of result.
+     *
+     * @param container Indexed container whose header was already parsed
+     * @param b         Index of the block to decode
+     * @param result    Destination for the whole message
+     * @throws IllegalArgumentException if the block is malformed or corrupt
+     */
+    private void decodeBlock(HuffmanContainer container, int b, char[] result) {
+        try {
+            HuffmanContainer block = container.seek(b);
+            if (!block.nextBlock() || block.blockCount != block.indexedBlockChars(b)) {
+                throw new IllegalArgumentException("Container block " + b + " does not match its index");
+            }
+            decodeCurrentBlock(block, result, b * block.blockChars);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Decodes the block the container was last advanced to into out, in
+     * whichever layout the container's flags call for.
+     *
+     * @param container Container positioned on a block by nextBlock()
+     * @param out       Destination for the decoded chars
+     * @param offset    Index in out of the block's first char
+     * @throws IllegalArgumentException if the block's bitstring is corrupt
+     */
+    void decodeCurrentBlock(HuffmanContainer container, char[] out, int offset) {
+        if ((container.flags & HuffmanContainer.FLAG_INTERLEAVED) != 0) {
+            decodeTable.decode(container.interleavedStreams(), out, offset, container.blockCount);
+        } else {
+            decodeTable.decode(container.syncReader(0), out, offset, container.blockCount);
+        }
+    }
+
+    /**
+     * Decodes chars [first, first + count) of the block the container was
+     * last advanced to into out, skipping as much of the block before them
+     * as its layout allows.
+     *
+     * @param container Container positioned on a block by nextBlock()
+     * @param first     Index in the block of the first char to decode
+     * @param out       Destination for the decoded chars
+     * @param offset    Index in out of char first
+     * @param count     Number of chars to decode
+     * @throws IllegalArgumentException if the block's bitstring is corrupt
+     */
+    void decodeCurrentBlock(HuffmanContainer container, int first, char[] out, int offset, int count) {
+        if ((container.flags & HuffmanContainer.FLAG_INTERLEAVED) != 0) {
+            // Chars of a range are spread over every stream; decode it all
+            char[] block = new char[container.blockCount];
+            decodeCurrentBlock(container, block, 0);
+            System.arraycopy(block, first, out, offset, count);
+            return;
+        }
+        BitReader reader = container.syncReader(first);
+        int skipped = container.syncChars == 0 ? first : first % container.syncChars;
+        for (int i = 0; i < skipped; i++) {
+            decodeTable.next(reader);
+        }
+        decodeTable.decode(reader, out, offset, count);
+    }
+
+    // -----------------------------------------------
+    // Streaming
+    // -----------------------------------------------
+
+    /**
+     * Compresses UTF-8 text read from the given stream until its end, one
+     * fixed-size block at a time, so memory use does not grow with the input.
+     * Neither stream is closed.
+     *
+     * @param in  Source of UTF-8 encoded text to compress
+     * @param out Destination of the compressed stream, formatted as a
+     *            {@link HuffmanContainer} flagged as streamed.
+     * @throws IOException              if reading or writing fails
+     * @throws IllegalArgumentException if the text contains a character
+     *                                  absent from the training corpus
+     */
+    public void compress(InputStream in, OutputStream out) throws IOException {
+        long start = System.nanoTime();
+        int blockChars = HuffmanContainer.DEFAULT_BLOCK_CHARS;
+        Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8);
+        char[] chars = new char[blockChars];
+        byte[] block = new byte[HuffmanContainer.headerBytes(HuffmanContainer.FLAG_STREAMED, blockChars, 0, 0, null)];
+        long written = HuffmanContainer.writeHeader(block, 0, HuffmanContainer.FLAG_STREAMED, blockChars, 0, 0, null);
+        out.write(block, 0, (int) written);
+        int count;
+        while ((count = readBlock(reader, chars)) > 0) {
+            CharBuffer text = CharBuffer.wrap(chars, 0, count);
+            long bits = encodedBits(text, 0, count);
+            int size = (int) ((bits + 7) >>> 3);
+            int blockBytes = HuffmanContainer.blockBytes(count, size);
+            if (block.length < blockBytes) {
+                block = new byte[blockBytes];
             }
+            out.write(block, 0, HuffmanContainer.writeBlock(codeTable, text, 0, count, size, block, 0));
+            metrics.recordEncoded(count, bits);
+            written += blockBytes;
         }
-        return result.toString();
+        out.write(0);
+        out.flush();
+        metrics.recordCompress(written + 1, System.nanoTime() - start);
     }
 
     /**
-     * Builds bitString from compressed byte array.
+     * Channel counterpart of {@link #compress(InputStream, OutputStream)}.
      *
-     * @param compressedMsg Byte array that is built through compressing the original message.
-     * @return The bitString used for traversing the trie for purpose of decompression.
+     * @param in  Source of UTF-8 encoded text to compress
+     * @param out Destination of the compressed stream
+     * @throws IOException if reading or writing fails
      */
-    private String buildBitString(byte[] compressedMsg) {
-        StringBuilder tempByteCode = new StringBuilder();
-        for (int i = 1; i < compressedMsg.length; i++) {
-            tempByteCode.append(String.format("%8s", Integer.toBinaryString(compressedMsg[i] & 0xFF)).replace(' ', '0'));
+    public void compress(ReadableByteChannel in, WritableByteChannel out) throws IOException {
+        compress(Channels.newInputStream(in), Channels.newOutputStream(out));
+    }
+
+    /**
+     * Decompresses a container read from the given stream, such as one written
+     * by {@link #compress(InputStream, OutputStream)} or
+     * {@link #compressContainer(String)}, writing the original text as UTF-8
+     * one block at a time. Reads exactly up to the end block, and closes
+     * neither stream.
+     *
+     * @param in  Source of the compressed stream
+     * @param out Destination of the decompressed UTF-8 text
+     * @throws IOException              if reading or writing fails, or the
+     *                                  container is malformed or fails a checksum
+     * @throws IllegalArgumentException if a block's bitstring is corrupt
+     */
+    public void decompress(InputStream in, OutputStream out) throws IOException {
+        long start = System.nanoTime();
+        HuffmanContainer blocks = new HuffmanContainer(in);
+        Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        char[] chars = new char[blocks.blockChars];
+        long decoded = 0;
+        while (blocks.nextBlock()) {
+            decodeCurrentBlock(blocks, chars, 0);
+            writer.write(chars, 0, blocks.blockCount);
+            decoded += blocks.blockCount;
+        }
+        if (blocks.symbolCount >= 0 && decoded != blocks.symbolCount) {
+            throw new IOException("Container character count does not match its header");
+        }
+        writer.flush();
+        metrics.recordDecompress(blocks.bytesRead(), decoded, System.nanoTime() - start);
+    }
+
+    /**
+     * Channel counterpart of {@link #decompress(InputStream, OutputStream)}.
+     *
+     * @param in  Source of the compressed stream
+     * @param out Destination of the decompressed UTF-8 text
+     * @throws IOException if reading or writing fails
+     */
+    public void decompress(ReadableByteChannel in, WritableByteChannel out) throws IOException {
+        decompress(Channels.newInputStream(in), Channels.newOutputStream(out));
+    }
+
+    /**
+     * Reads chars until the buffer is full or the reader is exhausted.
+     *
+     * @param reader Source of chars
+     * @param chars  Buffer to fill
+     * @return Number of chars read, less than chars.length only at the end of input.
+     * @throws IOException if reading fails
+     */
+    static int readBlock(Reader reader, char[] chars) throws IOException {
+        int count = 0;
+        while (count < chars.length) {
+            int read = reader.read(chars, count, chars.length - count);
+            if (read < 0) {
+                break;
+            }
+            count += read;
         }
-        return tempByteCode.toString();
+        return count;
     }
 
     // -----------------------------------------------
-    // Huffman Trie
+    // Memory-Mapped Files
     // -----------------------------------------------
 
     /**
-     * Huffman Trie Node class used in construction of the Huffman Trie.
-     * Each node is a binary (having at most a left and right child), contains
-     * a character field that it represents (in the case of a leaf, otherwise
-     * the null character \0), and a count field that holds the number of times
-     * the node's character (or those in its subtrees) appear in the corpus.
+     * Largest slice of the input file mapped at once; a mapping cannot exceed
+     * 2 GB, so larger files are walked through consecutive windows.
      */
-    private static class HuffNode implements Comparable<HuffNode> {
+    static final int MAX_WINDOW_BYTES = 1 << 30;
 
-        HuffNode left, right;
-        char character;
-        int count;
+    /**
+     * Compresses the UTF-8 text file at in into a file at out, producing the
+     * same container as {@link #compress(InputStream, OutputStream)}. The
+     * input is memory-mapped and decoded into an off-heap char buffer one
+     * block at a time, and each block is encoded into a direct buffer that
+     * is written straight to the output channel, so neither the text nor its
+     * compressed form is copied onto the Java heap and files larger than the
+     * heap can be compressed. The container has no block index, so it can
+     * only be decoded from its start; use {@link #compressSeekable(Path, Path)}
+     * for a file a {@link HuffmanRangeReader} can read ranges of.
+     *
+     * @param in  Path of the UTF-8 encoded text to compress
+     * @param out Path to write the compressed container to, replacing any
+     *            existing file
+     * @throws IOException              if reading, mapping or writing fails
+     * @throws IllegalArgumentException if the text contains a character
+     *                                  absent from the training corpus
+     */
+    public void compress(Path in, Path out) throws IOException {
+        compress(in, out, MAX_WINDOW_BYTES);
+    }
 
-        HuffNode(char character, int count) {
-            this.count = count;
-            this.character = character;
+    /**
+     * @param windowBytes Largest slice of the input to map at once, at least 4
+     *                    so any UTF-8 sequence fits in a single window
+     * @see #compress(Path, Path)
+     */
+    void compress(Path in, Path out, int windowBytes) throws IOException {
+        long start = System.nanoTime();
+        int blockChars = HuffmanContainer.DEFAULT_BLOCK_CHARS;
+        try (FileChannel src = FileChannel.open(in, StandardOpenOption.READ);
+             FileChannel dst = FileChannel.open(out, StandardOpenOption.WRITE,
+                     StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            byte[] header = new byte[HuffmanContainer.headerBytes(HuffmanContainer.FLAG_STREAMED, blockChars, 0, 0, null)];
+            HuffmanContainer.writeHeader(header, 0, HuffmanContainer.FLAG_STREAMED, blockChars, 0, 0, null);
+            writeFully(dst, ByteBuffer.wrap(header));
+
+            ByteBuffer block = ByteBuffer.allocateDirect(HuffmanContainer.blockBytes(blockChars,
+                    (int) (((long) blockChars * codeTable.maxLength + 7) >>> 3)));
+            forEachFileBlock(src, windowBytes, blockChars, (chars, count) -> {
+                long bits = encodedBits(chars, 0, count);
+                int bitBytes = (int) ((bits + 7) >>> 3);
+                block.clear();
+                HuffmanContainer.writeBlock(codeTable, chars, 0, count, bitBytes, block);
+                block.flip();
+                writeFully(dst, block);
+                metrics.recordEncoded(count, bits);
+            });
+            block.clear();
+            block.put((byte) 0).flip();
+            writeFully(dst, block);
+            metrics.recordCompress(dst.position(), System.nanoTime() - start);
         }
+    }
+
+    /**
+     * Compresses the UTF-8 text file at in into a seekable, indexed
+     * container at out, the file counterpart of
+     * {@link #compressSeekable(String)}: any range of it can later be read
+     * with a {@link HuffmanRangeReader} without reading the rest. The index
+     * precedes the blocks, so the input is read twice, once to measure every
+     * block and once to encode it; memory use is still one block plus 4
+     * bytes of index per block, however large the file.
+     *
+     * @param in  Path of the UTF-8 encoded text to compress
+     * @param out Path to write the compressed container to, replacing any
+     *            existing file
+     * @throws IOException              if reading, mapping or writing fails,
+     *                                  or the input changes between the passes
+     * @throws IllegalArgumentException if the text contains a character
+     *                                  absent from the training corpus
+     */
+    public void compressSeekable(Path in, Path out) throws IOException {
+        compressSeekable(in, out, MAX_WINDOW_BYTES);
+    }
 
-        public boolean isLeaf() {
-            return left == null && right == null;
+    /**
+     * @param windowBytes Largest slice of the input to map at once, at least 4
+     * @see #compressSeekable(Path, Path)
+     */
+    void compressSeekable(Path in, Path out, int windowBytes) throws IOException {
+        long start = System.nanoTime();
+        int flags = HuffmanContainer.FLAG_INDEXED | HuffmanContainer.FLAG_SEEKABLE;
+        int blockChars = HuffmanContainer.DEFAULT_BLOCK_CHARS;
+        int syncChars = HuffmanContainer.DEFAULT_SYNC_CHARS;
+        try (FileChannel src = FileChannel.open(in, StandardOpenOption.READ);
+             FileChannel dst = FileChannel.open(out, StandardOpenOption.WRITE,
+                     StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            // First pass: the encoded size of every block, for the index
+            List<Long> blockBits = new ArrayList<>();
+            long[] symbolCount = new long[1];
+            forEachFileBlock(src, windowBytes, blockChars, (chars, count) -> {
+                blockBits.add(encodedBits(chars, 0, count));
+                symbolCount[0] += count;
+            });
+            int[] blockSizes = new int[blockBits.size()];
+            int[] blockBytes = new int[blockSizes.length];
+            for (int b = 0; b < blockSizes.length; b++) {
+                int count = (int) Math.min(blockChars, symbolCount[0] - (long) b * blockChars);
+                blockSizes[b] = (int) ((blockBits.get(b) + 7) >>> 3)
+                        + HuffmanContainer.SYNC_POINT_BYTES * HuffmanContainer.syncPoints(count, syncChars);
+                blockBytes[b] = HuffmanContainer.blockBytes(count, blockSizes[b]);
+            }
+            byte[] header = new byte[HuffmanContainer.headerBytes(flags, blockChars, symbolCount[0], syncChars, blockBytes)];
+            HuffmanContainer.writeHeader(header, 0, flags, blockChars, symbolCount[0], syncChars, blockBytes);
+            writeFully(dst, ByteBuffer.wrap(header));
+
+            // Second pass: encode each block into the size measured for it
+            byte[] block = new byte[HuffmanContainer.blockBytes(blockChars,
+                    (int) (((long) blockChars * codeTable.maxLength + 7) >>> 3)
+                            + HuffmanContainer.SYNC_POINT_BYTES * HuffmanContainer.syncPoints(blockChars, syncChars))];
+            int[] next = new int[1];
+            forEachFileBlock(src, windowBytes, blockChars, (chars, count) -> {
+                int b = next[0]++;
+                long bits = encodedBits(chars, 0, count);
+                if (b >= blockSizes.length || count != Math.min(blockChars, symbolCount[0] - (long) b * blockChars)
+                        || bits != blockBits.get(b)) {
+                    throw new IOException("Input changed while it was being compressed");
+                }
+                int end = HuffmanContainer.writeSeekableBlock(codeTable, chars, 0, count, syncChars, blockSizes[b], block, 0);
+                writeFully(dst, ByteBuffer.wrap(block, 0, end));
+                metrics.recordEncoded(count, bits);
+            });
+            if (next[0] != blockSizes.length) {
+                throw new IOException("Input changed while it was being compressed");
+            }
+            writeFully(dst, ByteBuffer.wrap(new byte[1]));
+            metrics.recordCompress(dst.position(), System.nanoTime() - start);
         }
+    }
+
+    /**
+     * Consumer of the blocks of text {@link #forEachFileBlock} decodes.
+     */
+    private interface FileBlockTask {
+
+        void accept(CharBuffer chars, int count) throws IOException;
+
+    }
+
+    /**
+     * Decodes the UTF-8 text file open on src, from its start, into blocks
+     * of blockChars chars (the last may be shorter) in an off-heap buffer,
+     * handing each to task. The file is memory-mapped one window at a time.
+     *
+     * @param src         File to decode
+     * @param windowBytes Largest slice of the file to map at once
+     * @param blockChars  Chars per block
+     * @param task        Work for one block; the buffer is reused afterwards
+     * @throws IOException if mapping fails, or task throws it
+     */
+    private static void forEachFileBlock(FileChannel src, int windowBytes, int blockChars, FileBlockTask task)
+            throws IOException {
+        // Malformed input is replaced, as InputStreamReader does for the streaming mode
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        CharBuffer chars = ByteBuffer.allocateDirect(2 * blockChars).asCharBuffer();
 
-        public int compareTo(HuffNode other) {
-            return this.count - other.count;
+        long size = src.size();
+        long windowStart = 0;
+        ByteBuffer window = src.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, windowBytes));
+        boolean flushed = false;
+        while (!flushed) {
+            chars.clear();
+            while (chars.hasRemaining()) {
+                boolean lastWindow = windowStart + window.limit() >= size;
+                if (decoder.decode(window, chars, lastWindow).isOverflow()) {
+                    break;
+                }
+                if (lastWindow) {
+                    decoder.flush(chars);
+                    flushed = true;
+                    break;
+                }
+                // Remap from the first unconsumed byte, so a UTF-8 sequence
+                // split across windows is decoded whole from the next one
+                windowStart += window.position();
+                window = src.map(FileChannel.MapMode.READ_ONLY, windowStart, Math.min(size - windowStart, windowBytes));
+            }
+            chars.flip();
+            int count = chars.remaining();
+            if (count > 0) {
+                task.accept(chars, count);
+            }
         }
+    }
 
+    /**
+     * Writes every remaining byte of the buffer to the channel.
+     *
+     * @param channel Destination
+     * @param buffer  Bytes to write, from its position to its limit
+     * @throws IOException if writing fails
+     */
+    private static void writeFully(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
     }
 
 }
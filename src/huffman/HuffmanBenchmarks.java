@@ -0,0 +1,218 @@
+package huffman;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Author: Cooper LaRhette
+ */
+
+/**
+ * JMH benchmarks for construction, compression and decompression in the
+ * huffman package, over corpora of different sizes and entropy: English-like
+ * prose, server log lines, and uniformly random Latin-1 text. Run
+ * {@link #main(String[])} to get each benchmark's throughput in MB/s of
+ * uncompressed text, alongside the bytes it allocates per operation as
+ * measured by JMH's GC profiler.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HuffmanBenchmarks {
+
+    @Param({"english", "logs", "random"})
+    public String corpus;
+
+    @Param({"4096", "262144", "4194304"})
+    public int chars;
+
+    private String text;
+    private byte[] bytes;
+    private Huffman huffman;
+    private ByteHuffman byteHuffman;
+    private byte[] container;
+    private byte[] interleaved;
+    private byte[] compressedBytes;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        text = corpus(corpus, chars);
+        bytes = text.getBytes(StandardCharsets.UTF_8);
+        huffman = new Huffman(text);
+        byteHuffman = new ByteHuffman(bytes);
+        container = huffman.compressContainer(text);
+        interleaved = huffman.compressInterleaved(text);
+        compressedBytes = byteHuffman.compress(bytes);
+    }
+
+    // -----------------------------------------------
+    // Benchmarks
+    // -----------------------------------------------
+
+    @Benchmark
+    public Huffman construct() {
+        return new Huffman(text);
+    }
+
+    @Benchmark
+    public byte[] compressContainer() {
+        return huffman.compressContainer(text);
+    }
+
+    @Benchmark
+    public String decompressContainer() {
+        return huffman.decompressContainer(container);
+    }
+
+    @Benchmark
+    public byte[] compressInterleaved() {
+        return huffman.compressInterleaved(text);
+    }
+
+    @Benchmark
+    public String decompressInterleaved() {
+        return huffman.decompressContainer(interleaved);
+    }
+
+    @Benchmark
+    public byte[] compressBytes() {
+        return byteHuffman.compress(bytes);
+    }
+
+    @Benchmark
+    public byte[] decompressBytes() {
+        return byteHuffman.decompress(compressedBytes);
+    }
+
+    // -----------------------------------------------
+    // Corpora
+    // -----------------------------------------------
+
+    private static final String[] WORDS = {
+            "the", "of", "and", "to", "a", "in", "is", "it", "that", "was", "for", "on", "with",
+            "as", "he", "she", "they", "be", "at", "by", "this", "had", "not", "but", "from",
+            "which", "or", "have", "an", "were", "their", "one", "all", "would", "there",
+            "been", "when", "who", "will", "more", "no", "if", "out", "so", "said", "what",
+            "up", "its", "about", "into", "than", "them", "can", "only", "other", "new",
+            "some", "could", "time", "these", "two", "may", "then", "first", "any", "like",
+            "compression", "alphabet", "frequency", "distribution", "message", "corpus",
+            "symbol", "encoding", "algorithm", "throughput", "quickly", "brown", "jumps"
+    };
+
+    private static final String[] LEVELS = {"INFO", "INFO", "INFO", "DEBUG", "WARN", "ERROR"};
+
+    private static final String[] PATHS = {
+            "/api/users", "/api/orders", "/api/orders/items", "/health", "/static/app.js", "/login"
+    };
+
+    /**
+     * Generates a deterministic corpus, so every fork and
+     * {@link #main(String[])} see the same text for the same parameters.
+     *
+     * @param kind  "english" for prose with a skewed word distribution,
+     *              "logs" for structured log lines, "random" for chars drawn
+     *              uniformly from [0, 256)
+     * @param chars Number of chars to generate
+     * @return The corpus.
+     */
+    static String corpus(String kind, int chars) {
+        Random random = new Random(42);
+        StringBuilder text = new StringBuilder(chars + 128);
+        switch (kind) {
+            case "english":
+                boolean sentenceStart = true;
+                while (text.length() < chars) {
+                    // Cubing skews the pick towards the common words at the front
+                    double r = random.nextDouble();
+                    String word = WORDS[(int) (WORDS.length * r * r * r)];
+                    if (sentenceStart) {
+                        word = Character.toUpperCase(word.charAt(0)) + word.substring(1);
+                    }
+                    text.append(word);
+                    int end = random.nextInt(12);
+                    sentenceStart = end == 0;
+                    text.append(end == 0 ? ". " : end == 1 ? ", " : " ");
+                }
+                break;
+            case "logs":
+                long millis = 1_700_000_000_000L;
+                while (text.length() < chars) {
+                    millis += random.nextInt(50);
+                    text.append(millis).append(' ')
+                            .append(LEVELS[random.nextInt(LEVELS.length)])
+                            .append(" [worker-").append(random.nextInt(16)).append("] GET ")
+                            .append(PATHS[random.nextInt(PATHS.length)])
+                            .append(" status=").append(random.nextInt(20) == 0 ? 500 : 200)
+                            .append(" latency=").append(random.nextInt(400)).append("ms")
+                            .append(" id=").append(Long.toHexString(random.nextLong())).append('\n');
+                }
+                break;
+            case "random":
+                while (text.length() < chars) {
+                    text.append((char) random.nextInt(256));
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown corpus " + kind);
+        }
+        text.setLength(chars);
+        return text.toString();
+    }
+
+    // -----------------------------------------------
+    // Runner
+    // -----------------------------------------------
+
+    /**
+     * Runs every benchmark in this class with the GC profiler attached and
+     * prints one line per benchmark and parameter set: throughput in MB/s of
+     * UTF-8 encoded uncompressed text, and bytes allocated per operation.
+     *
+     * @param args Optional regular expression selecting which benchmarks to
+     *             run, e.g. "decompress"
+     * @throws RunnerException if JMH fails to run a benchmark
+     */
+    public static void main(String[] args) throws RunnerException {
+        String include = HuffmanBenchmarks.class.getSimpleName() + (args.length > 0 ? "." + args[0] : "");
+        Iterable<RunResult> results = new Runner(new OptionsBuilder()
+                .include(include)
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+
+        System.out.printf("%n%-24s %-8s %10s %12s %16s%n", "Benchmark", "Corpus", "Chars", "MB/s", "Alloc B/op");
+        for (RunResult result : results) {
+            String name = result.getParams().getBenchmark();
+            String kind = result.getParams().getParam("corpus");
+            int chars = Integer.parseInt(result.getParams().getParam("chars"));
+            long textBytes = corpus(kind, chars).getBytes(StandardCharsets.UTF_8).length;
+            double megabytesPerSecond = result.getPrimaryResult().getScore() * textBytes / 1e6;
+            Result<?> allocated = result.getSecondaryResults().get("gc.alloc.rate.norm");
+            System.out.printf("%-24s %-8s %10d %12.1f %16.0f%n", name.substring(name.lastIndexOf('.') + 1),
+                    kind, chars, megabytesPerSecond, allocated == null ? Double.NaN : allocated.getScore());
+        }
+    }
+
+}
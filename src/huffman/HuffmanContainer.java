@@ -0,0 +1,821 @@
+package huffman;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+/*
+ * Author: Cooper LaRhette
+ */
+
+/**
+ * Versioned container format for Huffman coded messages of any length.
+ * Formatted as a header and a series of independently decodable blocks:
+ * <pre>
+ * header: 'H' 'U' 'F' | version (1 byte) | flags (1 byte) |
+ *         varint chars per block | varint total chars (absent if FLAG_STREAMED) |
+ *         varint chars per sync point (only if FLAG_SEEKABLE)
+ * index:  only if FLAG_INDEXED: varint number of blocks | varint bytes per framed block...
+ * block:  varint chars in block | varint bitstring bytes | CRC32C of bitstring (4 bytes) |
+ *         0-padded bitstring
+ *         (if FLAG_INTERLEAVED, the bitstring is instead: bytes in streams 0-2
+ *         (4 bytes each) | 4 concatenated 0-padded streams, where char i of the
+ *         block is coded in stream i % 4)
+ *         (if FLAG_SEEKABLE, the bitstring is instead: bit offset of every
+ *         sync point's char past the first, i.e. chars k * chars per sync
+ *         point of the block for k &gt;= 1 (4 bytes each, relative to the
+ *         first code) | 0-padded codes)
+ * end:    a block with a char count of 0 (just the single byte 0)
+ * </pre>
+ * Every block but the last holds exactly the header's chars per block, so
+ * with the index a reader can locate any block, and the chars it holds,
+ * without scanning the ones before it; with sync points as well, a reader
+ * can start decoding at the last sync point before any char of a block.
+ * Varints are unsigned LEB128. The
+ * static helpers write a container into a byte array or ByteBuffer;
+ * instances read one back from an array or a stream.
+ */
+final class HuffmanContainer {
+
+    // -----------------------------------------------
+    // Format
+    // -----------------------------------------------
+
+    static final byte[] MAGIC = {'H', 'U', 'F'};
+    static final int VERSION = 1;
+
+    /**
+     * Set when the total char count was unknown up front (streamed input),
+     * in which case the header omits it and only the end block bounds it.
+     */
+    static final int FLAG_STREAMED = 1;
+
+    /**
+     * Set when a block index follows the header, as needed to decode blocks
+     * in parallel or seek straight to one of them.
+     */
+    static final int FLAG_INDEXED = 2;
+
+    /**
+     * Set when every block's chars are spread round-robin over
+     * {@link #STREAMS} separate bitstreams, so a decoder can work through
+     * the streams in one loop and overlap their table lookups.
+     */
+    static final int FLAG_INTERLEAVED = 4;
+
+    /**
+     * Set when every block starts with a table of sync points, the bit
+     * offsets of evenly spaced chars, so a reader can decode a range of
+     * chars from the nearest sync point instead of from the block's start.
+     * Never combined with FLAG_INTERLEAVED.
+     */
+    static final int FLAG_SEEKABLE = 8;
+
+    static final int DEFAULT_BLOCK_CHARS = 1 << 16;
+
+    /**
+     * Chars between sync points in seekable blocks: 64 per block at the
+     * default block size, so a point lookup decodes at most 1/64 of a block
+     * while the offsets cost 4 bytes per ~1 KB of text.
+     */
+    static final int DEFAULT_SYNC_CHARS = 1 << 10;
+
+    // Size of one sync point offset
+    static final int SYNC_POINT_BYTES = 4;
+
+    /**
+     * Number of bitstreams in an interleaved block.
+     */
+    static final int STREAMS = 4;
+
+    private static final int CHECKSUM_BYTES = 4;
+
+    // Sizes of all streams but the last, which fills the rest of the block
+    static final int JUMP_TABLE_BYTES = 4 * (STREAMS - 1);
+
+    // -----------------------------------------------
+    // Writing
+    // -----------------------------------------------
+
+    /**
+     * @param flags       Container flags
+     * @param blockChars  Chars per block
+     * @param symbolCount Total chars, ignored if FLAG_STREAMED
+     * @param syncChars   Chars per sync point, ignored unless FLAG_SEEKABLE
+     * @param blockBytes  Framed size of each block, ignored unless FLAG_INDEXED
+     * @return Number of bytes the header (and index) with the given fields occupies.
+     */
+    static int headerBytes(int flags, int blockChars, long symbolCount, int syncChars, int[] blockBytes) {
+        int size = MAGIC.length + 2 + varintBytes(blockChars);
+        if ((flags & FLAG_STREAMED) == 0) {
+            size += varintBytes(symbolCount);
+        }
+        if ((flags & FLAG_SEEKABLE) != 0) {
+            size += varintBytes(syncChars);
+        }
+        if ((flags & FLAG_INDEXED) != 0) {
+            size += varintBytes(blockBytes.length);
+            for (int bytes : blockBytes) {
+                size += varintBytes(bytes);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Writes the container header (and index) into out at pos.
+     *
+     * @return Index just past the header.
+     * @see #headerBytes(int, int, long, int, int[])
+     */
+    static int writeHeader(byte[] out, int pos, int flags, int blockChars, long symbolCount, int syncChars,
+                           int[] blockBytes) {
+        System.arraycopy(MAGIC, 0, out, pos, MAGIC.length);
+        pos += MAGIC.length;
+        out[pos++] = VERSION;
+        out[pos++] = (byte) flags;
+        pos = writeVarint(out, pos, blockChars);
+        if ((flags & FLAG_STREAMED) == 0) {
+            pos = writeVarint(out, pos, symbolCount);
+        }
+        if ((flags & FLAG_SEEKABLE) != 0) {
+            pos = writeVarint(out, pos, syncChars);
+        }
+        if ((flags & FLAG_INDEXED) != 0) {
+            pos = writeVarint(out, pos, blockBytes.length);
+            for (int bytes : blockBytes) {
+                pos = writeVarint(out, pos, bytes);
+            }
+        }
+        return pos;
+    }
+
+    /**
+     * @param count Number of chars in the block
+     * @param size  Number of bytes in the block's bitstring
+     * @return Number of bytes the framed block occupies.
+     */
+    static int blockBytes(int count, int size) {
+        return varintBytes(count) + varintBytes(size) + CHECKSUM_BYTES + size;
+    }
+
+    /**
+     * Encodes text[from, to) as one framed block into out at pos.
+     *
+     * @param table Code table to encode with
+     * @param text  Text to encode; every char must be in the table
+     * @param from  Index of the block's first char (inclusive)
+     * @param to    Index of the block's last char (exclusive)
+     * @param size  Bitstring size in bytes, as measured by the caller
+     * @param out   Destination, with room for {@link #blockBytes(int, int)} bytes at pos
+     * @param pos   Index in out to start the block at
+     * @return Index just past the block.
+     */
+    static int writeBlock(CodeTable table, CharSequence text, int from, int to, int size, byte[] out, int pos) {
+        pos = writeVarint(out, pos, to - from);
+        pos = writeVarint(out, pos, size);
+        int bitStart = pos + CHECKSUM_BYTES;
+        BitWriter writer = new BitWriter(out, bitStart);
+        table.encode(text, from, to, writer);
+        writer.flush();
+        writeInt(out, pos, checksum(out, bitStart, size));
+        return bitStart + size;
+    }
+
+    /**
+     * Encodes text[from, to) as one framed block into out at its position,
+     * advancing the position past the block. Direct buffers, such as those
+     * backing a file channel, are written without a heap copy.
+     *
+     * @param table Code table to encode with
+     * @param text  Text to encode; every char must be in the table
+     * @param from  Index of the block's first char (inclusive)
+     * @param to    Index of the block's last char (exclusive)
+     * @param size  Bitstring size in bytes, as measured by the caller
+     * @param out   Destination, with at least {@link #blockBytes(int, int)} bytes remaining
+     */
+    static void writeBlock(CodeTable table, CharSequence text, int from, int to, int size, ByteBuffer out) {
+        writeVarint(out, to - from);
+        writeVarint(out, size);
+        int checksumAt = out.position();
+        int bitStart = checksumAt + CHECKSUM_BYTES;
+        out.position(bitStart);
+        BitWriter writer = new BitWriter(out);
+        table.encode(text, from, to, writer);
+        writer.flush();
+        ByteBuffer bitString = out.duplicate();
+        bitString.position(bitStart).limit(bitStart + size);
+        CRC32C crc = new CRC32C();
+        crc.update(bitString);
+        int checksum = (int) crc.getValue();
+        for (int i = 0; i < CHECKSUM_BYTES; i++) {
+            out.put(checksumAt + i, (byte) (checksum >>> (24 - 8 * i)));
+        }
+        out.position(bitStart + size);
+    }
+
+    /**
+     * @param table Code table to encode with
+     * @param text  Text to measure; every char must be in the table
+     * @param from  Index of the block's first char (inclusive)
+     * @param to    Index of the block's last char (exclusive)
+     * @return Number of bytes text[from, to) occupies as an interleaved
+     * bitstring, jump table included.
+     * @throws IllegalArgumentException if a char has no code in the table
+     */
+    static int interleavedBytes(CodeTable table, CharSequence text, int from, int to) {
+        long size = JUMP_TABLE_BYTES;
+        for (int s = 0; s < STREAMS; s++) {
+            size += (table.encodedBits(text, from + s, to, STREAMS) + 7) >>> 3;
+        }
+        return (int) size;
+    }
+
+    /**
+     * Encodes text[from, to) as one framed, interleaved block into out at pos.
+     *
+     * @param size Bitstring size in bytes, as measured by
+     *             {@link #interleavedBytes(CodeTable, CharSequence, int, int)}
+     * @return Index just past the block.
+     * @see #writeBlock(CodeTable, CharSequence, int, int, int, byte[], int)
+     */
+    static int writeInterleavedBlock(CodeTable table, CharSequence text, int from, int to, int size, byte[] out, int pos) {
+        pos = writeVarint(out, pos, to - from);
+        pos = writeVarint(out, pos, size);
+        int bitStart = pos + CHECKSUM_BYTES;
+        int streamStart = bitStart + JUMP_TABLE_BYTES;
+        for (int s = 0; s < STREAMS; s++) {
+            BitWriter writer = new BitWriter(out, streamStart);
+            table.encode(text, from + s, to, STREAMS, writer);
+            int streamEnd = writer.flush();
+            if (s < STREAMS - 1) {
+                writeInt(out, bitStart + 4 * s, streamEnd - streamStart);
+            }
+            streamStart = streamEnd;
+        }
+        writeInt(out, pos, checksum(out, bitStart, size));
+        return bitStart + size;
+    }
+
+    /**
+     * @param count     Number of chars in the block
+     * @param syncChars Chars per sync point
+     * @return Number of sync points in a seekable block past the first,
+     * which is always at the block's first char.
+     */
+    static int syncPoints(int count, int syncChars) {
+        return count == 0 ? 0 : (count - 1) / syncChars;
+    }
+
+    /**
+     * Encodes text[from, to) as one framed, seekable block into out at pos.
+     *
+     * @param syncChars Chars per sync point
+     * @param size      Bitstring size in bytes: the sync point offsets plus
+     *                  the 0-padded codes, as measured by the caller
+     * @return Index just past the block.
+     * @see #writeBlock(CodeTable, CharSequence, int, int, int, byte[], int)
+     */
+    static int writeSeekableBlock(CodeTable table, CharSequence text, int from, int to, int syncChars, int size,
+                                  byte[] out, int pos) {
+        pos = writeVarint(out, pos, to - from);
+        pos = writeVarint(out, pos, size);
+        int bitStart = pos + CHECKSUM_BYTES;
+        int points = syncPoints(to - from, syncChars);
+        BitWriter writer = new BitWriter(out, bitStart + SYNC_POINT_BYTES * points);
+        long bits = 0;
+        for (int point = 0; point <= points; point++) {
+            int segmentFrom = from + point * syncChars, segmentTo = Math.min(to, segmentFrom + syncChars);
+            if (point > 0) {
+                writeInt(out, bitStart + SYNC_POINT_BYTES * (point - 1), (int) bits);
+            }
+            table.encode(text, segmentFrom, segmentTo, writer);
+            bits += table.encodedBits(text, segmentFrom, segmentTo);
+        }
+        writer.flush();
+        writeInt(out, pos, checksum(out, bitStart, size));
+        return bitStart + size;
+    }
+
+    /**
+     * Most bytes the framing in front of a block's bitstring can take: two
+     * varints of at most 5 bytes each and the checksum.
+     */
+    static final int MAX_FRAME_BYTES = 2 * 5 + CHECKSUM_BYTES;
+
+    /**
+     * Frames a bitstring already encoded into out, writing the block's
+     * char count, size and checksum into the bytes just before it.
+     *
+     * @param out      Array holding the bitstring, with at least
+     *                 {@link #MAX_FRAME_BYTES} free bytes in front of it
+     * @param bitStart Index in out of the bitstring's first byte
+     * @param count    Number of chars in the block
+     * @param size     Number of bytes in the bitstring
+     * @return Index of the framed block's first byte; the block ends at
+     * bitStart + size.
+     */
+    static int writeFrame(byte[] out, int bitStart, int count, int size) {
+        int start = bitStart - CHECKSUM_BYTES - varintBytes(size) - varintBytes(count);
+        int pos = writeVarint(out, start, count);
+        pos = writeVarint(out, pos, size);
+        writeInt(out, pos, checksum(out, bitStart, size));
+        return start;
+    }
+
+    static int varintBytes(long value) {
+        int size = 1;
+        while ((value >>>= 7) != 0) {
+            size++;
+        }
+        return size;
+    }
+
+    static int writeVarint(byte[] out, int pos, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out[pos++] = (byte) (value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        out[pos++] = (byte) value;
+        return pos;
+    }
+
+    static void writeVarint(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) (value & 0x7F | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    /**
+     * Reads a varint written by {@link #writeVarint(ByteBuffer, long)},
+     * advancing in past it.
+     *
+     * @param in Buffer positioned at the varint
+     * @return The varint's value, which may be negative if its top bit is set.
+     * @throws IllegalArgumentException if the varint is truncated or longer than 64 bits
+     */
+    static long readVarint(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 64 && in.hasRemaining(); shift += 7) {
+            int b = in.get();
+            if (shift == 63 && (b & 0x7E) != 0) {
+                break;
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed or truncated varint");
+    }
+
+    private static int checksum(byte[] buffer, int offset, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer, offset, length);
+        return (int) crc.getValue();
+    }
+
+    private static void writeInt(byte[] out, int pos, int value) {
+        out[pos] = (byte) (value >>> 24);
+        out[pos + 1] = (byte) (value >>> 16);
+        out[pos + 2] = (byte) (value >>> 8);
+        out[pos + 3] = (byte) value;
+    }
+
+    // -----------------------------------------------
+    // Reading
+    // -----------------------------------------------
+
+    final int version;
+    final int flags;
+    final int blockChars;
+    final long symbolCount;
+
+    // Chars per sync point if FLAG_SEEKABLE, else 0
+    final int syncChars;
+
+    // Start of each block in the array, if FLAG_INDEXED and reading an array
+    final int[] blockPositions;
+
+    // Offset of each block from the container's first byte, then of the end
+    // block, if FLAG_INDEXED and reading a stream of known length
+    final long[] blockStarts;
+
+    // Current block, set by nextBlock(): its bitstring is
+    // bitString[blockOffset, blockOffset + blockSize)
+    int blockCount;
+    byte[] bitString;
+    int blockOffset;
+    int blockSize;
+
+    private final InputStream in;
+    private final int start;
+    private int position;
+    private long streamBytes;
+
+    /**
+     * Parses the header of a container held entirely in the given array.
+     * Blocks are then read in place, without copying.
+     *
+     * @param buffer Complete container
+     * @throws IOException if the header is malformed or of an unknown version
+     */
+    HuffmanContainer(byte[] buffer) throws IOException {
+        this(null, -1, buffer, 0);
+    }
+
+    /**
+     * Parses the header of a container that starts part way into the given
+     * array, e.g. behind a prefix written by an enclosing format.
+     *
+     * @param buffer Array holding the complete container from offset on
+     * @param offset Index in buffer of the container's first byte
+     * @throws IOException if the header is malformed or of an unknown version
+     */
+    HuffmanContainer(byte[] buffer, int offset) throws IOException {
+        this(null, -1, buffer, offset);
+    }
+
+    /**
+     * Parses the header of a container read from the given stream. Each
+     * block is then read into a reusable buffer; nothing past the end
+     * block is consumed.
+     *
+     * @param in Source positioned at the start of the container
+     * @throws IOException if reading fails, or the header is malformed or of an unknown version
+     */
+    HuffmanContainer(InputStream in) throws IOException {
+        this(in, -1, new byte[0], 0);
+    }
+
+    /**
+     * Parses the header of a container read from the given stream, which
+     * holds at most length bytes of it. The index of an indexed container is
+     * kept as {@link #blockStarts}, so blocks can later be read from
+     * wherever the container is stored; see {@link #frameReader(byte[])}.
+     *
+     * @param in     Source positioned at the start of the container
+     * @param length Bytes from the container's start to the end of the source
+     * @throws IOException if reading fails, or the header is malformed or of an unknown version
+     */
+    HuffmanContainer(InputStream in, long length) throws IOException {
+        this(in, length, new byte[0], 0);
+    }
+
+    private HuffmanContainer(InputStream in, long length, byte[] buffer, int offset) throws IOException {
+        this.in = in;
+        this.start = offset;
+        this.position = offset;
+        // In array mode bitString is the whole container; blocks are read in place
+        this.bitString = buffer;
+        for (byte b : MAGIC) {
+            if (readByte() != (b & 0xFF)) {
+                throw new IOException("Not a Huffman container");
+            }
+        }
+        version = readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported Huffman container version " + version);
+        }
+        flags = readByte();
+        long chars = readVarint();
+        if (chars < 1 || chars > Integer.MAX_VALUE / CodeTable.MAX_CODE_LENGTH) {
+            throw new IOException("Unsupported Huffman container block size " + chars);
+        }
+        blockChars = (int) chars;
+        symbolCount = (flags & FLAG_STREAMED) != 0 ? -1 : readVarint();
+        if ((flags & FLAG_SEEKABLE) != 0) {
+            long sync = readVarint();
+            if (sync < 1 || sync > blockChars || (flags & FLAG_INTERLEAVED) != 0) {
+                throw new IOException("Malformed Huffman container sync points");
+            }
+            syncChars = (int) sync;
+        } else {
+            syncChars = 0;
+        }
+        if ((flags & FLAG_INDEXED) == 0) {
+            blockPositions = null;
+            blockStarts = null;
+            return;
+        }
+        long blocks = readVarint();
+        if (symbolCount < 0 || blocks < 0 || blocks != (symbolCount + blockChars - 1) / blockChars) {
+            throw new IOException("Huffman container index does not match its header");
+        }
+        if (in != null && length < 0) {
+            // Streams decode block by block and never seek, so the sizes are skipped
+            for (long b = 0; b < blocks; b++) {
+                readVarint();
+            }
+            blockPositions = null;
+            blockStarts = null;
+            return;
+        }
+        // Every size takes at least a byte, so a larger count cannot be genuine
+        if (blocks > (in == null ? buffer.length - position : length - streamBytes)) {
+            throw new IOException("Huffman container index is larger than the container");
+        }
+        long[] sizes = new long[(int) blocks];
+        for (int b = 0; b < sizes.length; b++) {
+            sizes[b] = readVarint();
+            if (sizes[b] < 0) {
+                throw new IOException("Malformed Huffman container index");
+            }
+        }
+        if (in != null) {
+            blockPositions = null;
+            blockStarts = new long[sizes.length + 1];
+            blockStarts[0] = streamBytes;
+            for (int b = 0; b < sizes.length; b++) {
+                if (sizes[b] > length - blockStarts[b]) {
+                    throw new EOFException("Huffman container is truncated");
+                }
+                blockStarts[b + 1] = blockStarts[b] + sizes[b];
+            }
+            return;
+        }
+        blockStarts = null;
+        blockPositions = new int[sizes.length];
+        long blockStart = position;
+        for (int b = 0; b < sizes.length; b++) {
+            if (blockStart > buffer.length) {
+                throw new EOFException("Huffman container is truncated");
+            }
+            blockPositions[b] = (int) blockStart;
+            blockStart += sizes[b];
+        }
+    }
+
+    /**
+     * Creates an independent reader over the same array, positioned at the
+     * given block, so several blocks can be decoded concurrently.
+     *
+     * @param header Reader whose header (and index) was already parsed
+     * @param block  Index of the block to position at
+     */
+    private HuffmanContainer(HuffmanContainer header, int block) {
+        in = null;
+        bitString = header.bitString;
+        version = header.version;
+        flags = header.flags;
+        blockChars = header.blockChars;
+        symbolCount = header.symbolCount;
+        syncChars = header.syncChars;
+        blockPositions = header.blockPositions;
+        blockStarts = null;
+        start = header.start;
+        position = blockPositions[block];
+    }
+
+    /**
+     * Creates a reader over a single framed block, read by the caller from a
+     * container whose header was already parsed.
+     *
+     * @param header Reader whose header (and index) was already parsed
+     * @param frame  The framed block, exactly
+     */
+    private HuffmanContainer(HuffmanContainer header, byte[] frame) {
+        in = null;
+        bitString = frame;
+        version = header.version;
+        flags = header.flags;
+        blockChars = header.blockChars;
+        symbolCount = header.symbolCount;
+        syncChars = header.syncChars;
+        blockPositions = null;
+        blockStarts = null;
+        start = 0;
+        position = 0;
+    }
+
+    /**
+     * Copies the current block into a reader of its own, positioned on that
+     * block, so it can be decoded on another thread while this reader moves on.
+     *
+     * @param block Reader whose current block to copy
+     */
+    private HuffmanContainer(HuffmanContainer block) {
+        in = null;
+        bitString = Arrays.copyOfRange(block.bitString, block.blockOffset, block.blockOffset + block.blockSize);
+        version = block.version;
+        flags = block.flags;
+        blockChars = block.blockChars;
+        symbolCount = block.symbolCount;
+        syncChars = block.syncChars;
+        blockPositions = null;
+        blockStarts = null;
+        start = 0;
+        position = bitString.length;
+        blockCount = block.blockCount;
+        blockOffset = 0;
+        blockSize = block.blockSize;
+    }
+
+    /**
+     * @return A reader holding a copy of the current block, as left by
+     * {@link #nextBlock()}, independent of this one.
+     */
+    HuffmanContainer detachBlock() {
+        return new HuffmanContainer(this);
+    }
+
+    /**
+     * @param frame Block of this container, as framed by the writer, read
+     *              from [blockStarts[b], blockStarts[b + 1]) of its source
+     * @return A reader over just that block; call {@link #nextBlock()} on it
+     * to verify and load the block.
+     */
+    HuffmanContainer frameReader(byte[] frame) {
+        return new HuffmanContainer(this, frame);
+    }
+
+    /**
+     * @return Number of blocks listed in the index.
+     */
+    int indexedBlocks() {
+        return blockPositions.length;
+    }
+
+    /**
+     * @param block Index of a block
+     * @return Number of chars the given block holds, per the header.
+     */
+    int indexedBlockChars(int block) {
+        return (int) Math.min(blockChars, symbolCount - (long) block * blockChars);
+    }
+
+    /**
+     * Creates a reader positioned at the given block of an indexed array
+     * container; call {@link #nextBlock()} on it to load that block.
+     *
+     * @param block Index of the block to read
+     * @return A new reader, independent of this one.
+     */
+    HuffmanContainer seek(int block) {
+        if (blockPositions == null) {
+            throw new IllegalStateException("Container has no block index");
+        }
+        return new HuffmanContainer(this, block);
+    }
+
+    /**
+     * Advances to the next block and verifies its checksum.
+     *
+     * @return False once the end block is reached.
+     * @throws IOException if reading fails, or the block is malformed, truncated or corrupt
+     */
+    boolean nextBlock() throws IOException {
+        long count = readVarint();
+        if (count == 0) {
+            return false;
+        }
+        long size = readVarint();
+        // Varints carry 64 bits, so a crafted block can declare negative values
+        if (count < 0 || size < 0) {
+            throw new IOException("Malformed Huffman container block");
+        }
+        long maxSize = (count * CodeTable.MAX_CODE_LENGTH + 7) >>> 3;
+        if ((flags & FLAG_INTERLEAVED) != 0) {
+            maxSize += JUMP_TABLE_BYTES;
+        }
+        if ((flags & FLAG_SEEKABLE) != 0 && count <= blockChars) {
+            maxSize += (long) SYNC_POINT_BYTES * syncPoints((int) count, syncChars);
+        }
+        if (count > blockChars || size > maxSize) {
+            throw new IOException("Malformed Huffman container block");
+        }
+        int checksum = readByte() << 24 | readByte() << 16 | readByte() << 8 | readByte();
+        blockCount = (int) count;
+        blockSize = (int) size;
+        if (in == null) {
+            if (size > bitString.length - position) {
+                throw new EOFException("Huffman container is truncated");
+            }
+            blockOffset = position;
+            position += blockSize;
+        } else {
+            if (bitString.length < blockSize) {
+                bitString = new byte[blockSize];
+            }
+            blockOffset = 0;
+            int read = 0;
+            while (read < blockSize) {
+                int n = in.read(bitString, read, blockSize - read);
+                if (n < 0) {
+                    throw new EOFException("Huffman container is truncated");
+                }
+                read += n;
+            }
+            streamBytes += read;
+        }
+        if (checksum != checksum(bitString, blockOffset, blockSize)) {
+            throw new IOException("Huffman container block failed its checksum");
+        }
+        return true;
+    }
+
+    /**
+     * Splits the current block's bitstring into readers over its streams;
+     * only for containers with FLAG_INTERLEAVED.
+     *
+     * @return One reader per stream, stream i holding chars i, i + STREAMS, ...
+     * @throws IllegalArgumentException if the block's jump table is malformed
+     */
+    BitReader[] interleavedStreams() {
+        if (blockSize < JUMP_TABLE_BYTES) {
+            throw new IllegalArgumentException("Interleaved block is missing its jump table");
+        }
+        BitReader[] streams = new BitReader[STREAMS];
+        int end = blockOffset + blockSize;
+        int streamStart = blockOffset + JUMP_TABLE_BYTES;
+        for (int s = 0; s < STREAMS; s++) {
+            long length = end - streamStart;
+            if (s < STREAMS - 1) {
+                int at = blockOffset + 4 * s;
+                length = ((bitString[at] & 0xFFL) << 24 | (bitString[at + 1] & 0xFF) << 16
+                        | (bitString[at + 2] & 0xFF) << 8 | bitString[at + 3] & 0xFF);
+                if (length > end - streamStart) {
+                    throw new IllegalArgumentException("Interleaved block has a malformed jump table");
+                }
+            }
+            streams[s] = new BitReader(bitString, streamStart, streamStart + (int) length);
+            streamStart += length;
+        }
+        return streams;
+    }
+
+    /**
+     * Positions a reader over the current block's codes at the last sync
+     * point at or before the given char; without FLAG_SEEKABLE, that is
+     * always the block's first char.
+     *
+     * @param index Index of a char within the current block
+     * @return A reader whose next code is that of char
+     * {@code index - index % syncChars} (or 0) of the block.
+     * @throws IllegalArgumentException if the block's sync points are malformed
+     */
+    BitReader syncReader(int index) {
+        int end = blockOffset + blockSize;
+        int points = syncChars == 0 ? 0 : syncPoints(blockCount, syncChars);
+        int codeStart = blockOffset + SYNC_POINT_BYTES * points;
+        if (codeStart > end) {
+            throw new IllegalArgumentException("Seekable block is missing its sync points");
+        }
+        int point = syncChars == 0 ? 0 : index / syncChars;
+        long bit = 0;
+        if (point > 0) {
+            int at = blockOffset + SYNC_POINT_BYTES * (point - 1);
+            bit = (bitString[at] & 0xFFL) << 24 | (bitString[at + 1] & 0xFF) << 16
+                    | (bitString[at + 2] & 0xFF) << 8 | bitString[at + 3] & 0xFF;
+            if (bit > 8L * (end - codeStart)) {
+                throw new IllegalArgumentException("Seekable block has a malformed sync point");
+            }
+        }
+        BitReader reader = new BitReader(bitString, codeStart + (int) (bit >>> 3), end);
+        reader.fill();
+        reader.skip((int) bit & 7);
+        return reader;
+    }
+
+    /**
+     * @return Number of bytes of the container consumed so far.
+     */
+    long bytesRead() {
+        return in == null ? position - start : streamBytes;
+    }
+
+    private int readByte() throws IOException {
+        int b;
+        if (in == null) {
+            b = position < bitString.length ? bitString[position++] & 0xFF : -1;
+        } else {
+            b = in.read();
+            streamBytes++;
+        }
+        if (b < 0) {
+            throw new EOFException("Huffman container is truncated");
+        }
+        return b;
+    }
+
+    private long readVarint() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            if (shift == 63 && (b & 0x7E) != 0) {
+                break;
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint in Huffman container");
+    }
+
+}
@@ -0,0 +1,262 @@
+package huffman;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Author: Cooper LaRhette
+ */
+
+/**
+ * Running statistics on how well a Huffman instance's model fits the
+ * messages it actually sees. Every counter is a {@link LongAdder}, striped
+ * across threads, so recording costs a few uncontended adds per call even
+ * when one instance is shared. Poll the getters, or {@link #snapshot()} for
+ * export; a live average code length drifting away from
+ * {@link #modelCodeLength()}, or a growing {@link #unseenChars()}, means
+ * traffic no longer looks like the training corpus and the model should be
+ * retrained.
+ */
+public final class HuffmanMetrics {
+
+    private final double modelEntropy;
+    private final double modelCodeLength;
+
+    private final LongAdder compressedChars = new LongAdder();
+    private final LongAdder encodedBits = new LongAdder();
+    private final LongAdder compressedBytes = new LongAdder();
+    private final LongAdder decompressedBytes = new LongAdder();
+    private final LongAdder decompressedChars = new LongAdder();
+    private final LongAdder unseenChars = new LongAdder();
+    private final LatencyHistogram compressLatency = new LatencyHistogram();
+    private final LatencyHistogram decompressLatency = new LatencyHistogram();
+
+    /**
+     * @param table  Code table the instance compresses with
+     * @param counts Training corpus histogram indexed by symbol, or null when
+     *               the model was loaded without one, in which case the
+     *               distribution the code lengths imply (2^-length) stands in
+     */
+    HuffmanMetrics(CodeTable table, int[] counts) {
+        double total = 0;
+        for (int symbol = 0; symbol < table.lengths.length; symbol++) {
+            total += weight(table, counts, symbol);
+        }
+        double entropy = 0, codeLength = 0;
+        for (int symbol = 0; symbol < table.lengths.length; symbol++) {
+            double p = weight(table, counts, symbol) / total;
+            if (p > 0) {
+                entropy -= p * Math.log(p) / Math.log(2);
+                codeLength += p * table.lengths[symbol];
+            }
+        }
+        this.modelEntropy = entropy;
+        this.modelCodeLength = codeLength;
+    }
+
+    private static double weight(CodeTable table, int[] counts, int symbol) {
+        if (table.lengths[symbol] == 0) {
+            return 0;
+        }
+        return counts != null ? counts[symbol] : Math.pow(2, -table.lengths[symbol]);
+    }
+
+    // -----------------------------------------------
+    // Recording
+    // -----------------------------------------------
+
+    void recordEncoded(long chars, long bits) {
+        compressedChars.add(chars);
+        encodedBits.add(bits);
+    }
+
+    void recordCompress(long bytesOut, long nanos) {
+        compressedBytes.add(bytesOut);
+        compressLatency.record(nanos);
+    }
+
+    void recordDecompress(long bytesIn, long charsOut, long nanos) {
+        decompressedBytes.add(bytesIn);
+        decompressedChars.add(charsOut);
+        decompressLatency.record(nanos);
+    }
+
+    void recordUnseen(long chars) {
+        unseenChars.add(chars);
+    }
+
+    // -----------------------------------------------
+    // Polling
+    // -----------------------------------------------
+
+    /**
+     * @return Entropy of the training corpus in bits per char, the lower
+     * bound on the average code length for traffic distributed like it.
+     */
+    public double modelEntropy() {
+        return modelEntropy;
+    }
+
+    /**
+     * @return Average code length in bits per char the model achieves on its
+     * own training corpus.
+     */
+    public double modelCodeLength() {
+        return modelCodeLength;
+    }
+
+    /**
+     * @return Average code length in bits per char over everything compressed
+     * so far, or NaN before the first compression. Interleaved blocks count
+     * the padding of each of their streams.
+     */
+    public double averageCodeLength() {
+        long chars = compressedChars.sum();
+        return chars == 0 ? Double.NaN : (double) encodedBits.sum() / chars;
+    }
+
+    /**
+     * @return Number of chars compressed so far.
+     */
+    public long compressedChars() {
+        return compressedChars.sum();
+    }
+
+    /**
+     * @return Number of bytes of compressed output produced so far, framing included.
+     */
+    public long compressedBytes() {
+        return compressedBytes.sum();
+    }
+
+    /**
+     * @return Number of compressed bytes decompressed so far.
+     */
+    public long decompressedBytes() {
+        return decompressedBytes.sum();
+    }
+
+    /**
+     * @return Number of chars produced by decompression so far.
+     */
+    public long decompressedChars() {
+        return decompressedChars.sum();
+    }
+
+    /**
+     * @return Number of chars absent from the model found in messages that
+     * were rejected for it.
+     */
+    public long unseenChars() {
+        return unseenChars.sum();
+    }
+
+    /**
+     * @return Wall-clock time of each compress call.
+     */
+    public LatencyHistogram compressLatency() {
+        return compressLatency;
+    }
+
+    /**
+     * @return Wall-clock time of each decompress call.
+     */
+    public LatencyHistogram decompressLatency() {
+        return decompressLatency;
+    }
+
+    /**
+     * @return Every metric by name, for export to a monitoring system. Each
+     * value is read independently, so concurrent calls may be only partly
+     * reflected.
+     */
+    public Map<String, Number> snapshot() {
+        Map<String, Number> metrics = new LinkedHashMap<>();
+        metrics.put("model.entropy", modelEntropy);
+        metrics.put("model.codeLength", modelCodeLength);
+        metrics.put("compress.chars", compressedChars());
+        metrics.put("compress.bytes", compressedBytes());
+        metrics.put("compress.codeLength", averageCodeLength());
+        metrics.put("compress.unseenChars", unseenChars());
+        metrics.put("compress.calls", compressLatency.count());
+        metrics.put("compress.latency.p50", compressLatency.percentile(0.5));
+        metrics.put("compress.latency.p99", compressLatency.percentile(0.99));
+        metrics.put("decompress.bytes", decompressedBytes());
+        metrics.put("decompress.chars", decompressedChars());
+        metrics.put("decompress.calls", decompressLatency.count());
+        metrics.put("decompress.latency.p50", decompressLatency.percentile(0.5));
+        metrics.put("decompress.latency.p99", decompressLatency.percentile(0.99));
+        return metrics;
+    }
+
+    // -----------------------------------------------
+    // Latency Histogram
+    // -----------------------------------------------
+
+    /**
+     * Histogram of durations in power-of-two nanosecond buckets: bucket b
+     * holds durations in [2^(b-1), 2^b), bucket 0 just 0. Coarse, but
+     * recording is one leading-zero count and one striped add.
+     */
+    public static final class LatencyHistogram {
+
+        private final LongAdder[] buckets = new LongAdder[Long.SIZE];
+
+        LatencyHistogram() {
+            for (int b = 0; b < buckets.length; b++) {
+                buckets[b] = new LongAdder();
+            }
+        }
+
+        void record(long nanos) {
+            buckets[Long.SIZE - Long.numberOfLeadingZeros(Math.max(0, nanos))].increment();
+        }
+
+        /**
+         * @return Number of durations in each bucket, indexed as described above.
+         */
+        public long[] counts() {
+            long[] counts = new long[buckets.length];
+            for (int b = 0; b < buckets.length; b++) {
+                counts[b] = buckets[b].sum();
+            }
+            return counts;
+        }
+
+        /**
+         * @return Number of durations recorded.
+         */
+        public long count() {
+            long count = 0;
+            for (LongAdder bucket : buckets) {
+                count += bucket.sum();
+            }
+            return count;
+        }
+
+        /**
+         * @param quantile Fraction of durations to cover, in (0, 1]
+         * @return Upper bound in nanoseconds of the bucket holding the given
+         * quantile, so at most twice the true value; 0 if nothing was recorded.
+         */
+        public long percentile(double quantile) {
+            long[] counts = counts();
+            long total = 0;
+            for (long count : counts) {
+                total += count;
+            }
+            long rank = (long) Math.ceil(quantile * total);
+            long seen = 0;
+            for (int b = 0; b < counts.length; b++) {
+                seen += counts[b];
+                if (seen >= rank && counts[b] != 0) {
+                    return b == Long.SIZE - 1 ? Long.MAX_VALUE : (1L << b) - 1;
+                }
+            }
+            return 0;
+        }
+
+    }
+
+}
@@ -0,0 +1,494 @@
+package huffman;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Author: Cooper LaRhette
+ */
+
+/**
+ * Staged, multi-threaded counterpart of {@link Huffman#compress(InputStream, OutputStream)}
+ * and {@link Huffman#decompress(InputStream, OutputStream)}. Compression runs
+ * five stages, each on its own thread, one block at a time:
+ * <pre>
+ * read   - decodes the next block of UTF-8 input into chars
+ * model  - measures the block against the model's code table, rejecting
+ *          chars the model has no code for
+ * encode - writes the block's codes into its bitstring
+ * frame  - prefixes the bitstring with its char count, size and checksum
+ * write  - writes the framed block to the output
+ * </pre>
+ * Decompression runs three: read (parse and checksum the next block),
+ * decode, and write (as UTF-8). The output is byte for byte that of the
+ * single-threaded methods, and every model metric is recorded as they
+ * would record it.
+ * <p>
+ * Consecutive stages are connected by bounded queues, so a stage that
+ * falls behind, such as writing to a slow disk, blocks the stages before
+ * it once its queue fills instead of letting blocks pile up: at most
+ * {@code stages + (stages - 1) * queueBlocks} blocks are ever in memory.
+ * {@link #stages()} reports how many chars each stage has processed, and
+ * how long it spent working versus waiting on its queues; the stage with
+ * the lowest {@link Stage#charsPerSecond()} is the bottleneck.
+ * <p>
+ * A pipeline is thread-safe, and may run any number of compressions and
+ * decompressions at once; its counters accumulate over all of them.
+ */
+public final class HuffmanPipeline {
+
+    /**
+     * Blocks each queue holds before its producer blocks.
+     */
+    static final int DEFAULT_QUEUE_BLOCKS = 4;
+
+    private final Huffman model;
+    private final int queueBlocks;
+
+    private final Stage compressRead = new Stage("compress.read");
+    private final Stage compressModel = new Stage("compress.model");
+    private final Stage compressEncode = new Stage("compress.encode");
+    private final Stage compressFrame = new Stage("compress.frame");
+    private final Stage compressWrite = new Stage("compress.write");
+    private final Stage decompressRead = new Stage("decompress.read");
+    private final Stage decompressDecode = new Stage("decompress.decode");
+    private final Stage decompressWrite = new Stage("decompress.write");
+
+    /**
+     * Creates a pipeline over the given model with the default queue size.
+     *
+     * @param model Model to compress and decompress with
+     */
+    public HuffmanPipeline(Huffman model) {
+        this(model, DEFAULT_QUEUE_BLOCKS);
+    }
+
+    /**
+     * Creates a pipeline over the given model.
+     *
+     * @param model       Model to compress and decompress with
+     * @param queueBlocks Blocks each queue between two stages holds, at least 1
+     */
+    public HuffmanPipeline(Huffman model, int queueBlocks) {
+        if (queueBlocks < 1) {
+            throw new IllegalArgumentException("Pipeline queues must hold at least one block");
+        }
+        this.model = model;
+        this.queueBlocks = queueBlocks;
+    }
+
+    /**
+     * A block on its way through the pipeline; each stage fills in the
+     * fields the next one needs.
+     */
+    private static final class Block {
+
+        char[] chars;
+        int count;
+        long bits;
+        int size;
+
+        // Framed block is bytes[start, end)
+        byte[] bytes;
+        int start;
+        int end;
+
+        // Detached reader positioned on the block, when decompressing
+        HuffmanContainer container;
+
+    }
+
+    // Marks the end of the input on every queue
+    private static final Block END = new Block();
+
+    // -----------------------------------------------
+    // Compression
+    // -----------------------------------------------
+
+    /**
+     * Compresses UTF-8 text read from the given stream until its end. Neither
+     * stream is closed.
+     *
+     * @param in  Source of UTF-8 encoded text to compress
+     * @param out Destination of the compressed stream, formatted as a
+     *            {@link HuffmanContainer} flagged as streamed.
+     * @throws IOException              if reading or writing fails, or the
+     *                                  calling thread is interrupted
+     * @throws IllegalArgumentException if the text contains a character
+     *                                  absent from the training corpus
+     * @see Huffman#compress(InputStream, OutputStream)
+     */
+    public void compress(InputStream in, OutputStream out) throws IOException {
+        long start = System.nanoTime();
+        int blockChars = HuffmanContainer.DEFAULT_BLOCK_CHARS;
+        Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8);
+        byte[] header = new byte[HuffmanContainer.headerBytes(HuffmanContainer.FLAG_STREAMED, blockChars, 0, 0, null)];
+        HuffmanContainer.writeHeader(header, 0, HuffmanContainer.FLAG_STREAMED, blockChars, 0, 0, null);
+        out.write(header);
+        LongAdder written = new LongAdder();
+
+        Run run = new Run();
+        run.source(compressRead, () -> {
+            Block block = new Block();
+            block.chars = new char[blockChars];
+            block.count = Huffman.readBlock(reader, block.chars);
+            return block.count == 0 ? null : block;
+        });
+        run.stage(compressModel, block -> {
+            block.bits = model.encodedBits(CharBuffer.wrap(block.chars, 0, block.count), 0, block.count);
+            block.size = (int) ((block.bits + 7) >>> 3);
+        });
+        run.stage(compressEncode, block -> {
+            block.bytes = new byte[HuffmanContainer.MAX_FRAME_BYTES + block.size];
+            BitWriter writer = new BitWriter(block.bytes, HuffmanContainer.MAX_FRAME_BYTES);
+            model.encode(CharBuffer.wrap(block.chars, 0, block.count), 0, block.count, writer);
+            block.end = writer.flush();
+            // Only the bitstring is needed from here on
+            block.chars = null;
+        });
+        run.stage(compressFrame, block -> {
+            block.start = HuffmanContainer.writeFrame(block.bytes, HuffmanContainer.MAX_FRAME_BYTES, block.count, block.size);
+        });
+        run.sink(compressWrite, block -> {
+            out.write(block.bytes, block.start, block.end - block.start);
+            model.metrics().recordEncoded(block.count, block.bits);
+            written.add(block.end - block.start);
+        });
+        run.await();
+
+        out.write(0);
+        out.flush();
+        model.metrics().recordCompress(header.length + written.sum() + 1, System.nanoTime() - start);
+    }
+
+    // -----------------------------------------------
+    // Decompression
+    // -----------------------------------------------
+
+    /**
+     * Decompresses a container read from the given stream, writing the
+     * original text as UTF-8. Reads exactly up to the end block, and closes
+     * neither stream.
+     *
+     * @param in  Source of the compressed stream
+     * @param out Destination of the decompressed UTF-8 text
+     * @throws IOException              if reading or writing fails, the
+     *                                  container is malformed or fails a
+     *                                  checksum, or the calling thread is interrupted
+     * @throws IllegalArgumentException if a block's bitstring is corrupt
+     * @see Huffman#decompress(InputStream, OutputStream)
+     */
+    public void decompress(InputStream in, OutputStream out) throws IOException {
+        long start = System.nanoTime();
+        HuffmanContainer blocks = new HuffmanContainer(in);
+        Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        LongAdder decoded = new LongAdder();
+
+        Run run = new Run();
+        run.source(decompressRead, () -> {
+            if (!blocks.nextBlock()) {
+                return null;
+            }
+            Block block = new Block();
+            block.container = blocks.detachBlock();
+            block.count = blocks.blockCount;
+            return block;
+        });
+        run.stage(decompressDecode, block -> {
+            block.chars = new char[block.count];
+            model.decodeCurrentBlock(block.container, block.chars, 0);
+            block.container = null;
+        });
+        run.sink(decompressWrite, block -> {
+            writer.write(block.chars, 0, block.count);
+            decoded.add(block.count);
+        });
+        run.await();
+
+        if (blocks.symbolCount >= 0 && decoded.sum() != blocks.symbolCount) {
+            throw new IOException("Container character count does not match its header");
+        }
+        writer.flush();
+        model.metrics().recordDecompress(blocks.bytesRead(), decoded.sum(), System.nanoTime() - start);
+    }
+
+    // -----------------------------------------------
+    // Stages
+    // -----------------------------------------------
+
+    /**
+     * @return Counters for every stage, compression stages first, in pipeline order.
+     */
+    public List<Stage> stages() {
+        return Collections.unmodifiableList(Arrays.asList(compressRead, compressModel, compressEncode,
+                compressFrame, compressWrite, decompressRead, decompressDecode, decompressWrite));
+    }
+
+    /**
+     * @return Every stage counter by name, for export to a monitoring system,
+     * e.g. "compress.encode.charsPerSecond".
+     */
+    public Map<String, Number> snapshot() {
+        Map<String, Number> metrics = new LinkedHashMap<>();
+        for (Stage stage : stages()) {
+            metrics.put(stage.name + ".blocks", stage.blocks());
+            metrics.put(stage.name + ".chars", stage.chars());
+            metrics.put(stage.name + ".busyNanos", stage.busyNanos());
+            metrics.put(stage.name + ".waitNanos", stage.waitNanos());
+            metrics.put(stage.name + ".charsPerSecond", stage.charsPerSecond());
+        }
+        return metrics;
+    }
+
+    /**
+     * Running throughput counters for one pipeline stage. Chars are the
+     * block's text chars at every stage, so stages compare directly.
+     */
+    public static final class Stage {
+
+        private final String name;
+        private final LongAdder blocks = new LongAdder();
+        private final LongAdder chars = new LongAdder();
+        private final LongAdder busyNanos = new LongAdder();
+        private final LongAdder waitNanos = new LongAdder();
+
+        Stage(String name) {
+            this.name = name;
+        }
+
+        void record(int count, long nanos) {
+            blocks.increment();
+            chars.add(count);
+            busyNanos.add(nanos);
+        }
+
+        /**
+         * @return Stage name, e.g. "compress.encode".
+         */
+        public String name() {
+            return name;
+        }
+
+        /**
+         * @return Number of blocks the stage has processed.
+         */
+        public long blocks() {
+            return blocks.sum();
+        }
+
+        /**
+         * @return Number of chars in the blocks the stage has processed.
+         */
+        public long chars() {
+            return chars.sum();
+        }
+
+        /**
+         * @return Time the stage has spent processing blocks.
+         */
+        public long busyNanos() {
+            return busyNanos.sum();
+        }
+
+        /**
+         * @return Time the stage has spent blocked, waiting for a block from
+         * the stage before it or for room in the queue to the stage after it.
+         */
+        public long waitNanos() {
+            return waitNanos.sum();
+        }
+
+        /**
+         * @return Chars processed per second of busy time, i.e. the
+         * throughput the stage would sustain if it never waited, or NaN
+         * before its first block.
+         */
+        public double charsPerSecond() {
+            long busy = busyNanos.sum();
+            return busy == 0 ? Double.NaN : chars.sum() * 1e9 / busy;
+        }
+
+        @Override
+        public String toString() {
+            return name + ": " + blocks() + " blocks, " + chars() + " chars, "
+                    + busyNanos() / 1_000_000 + " ms busy, " + waitNanos() / 1_000_000 + " ms waiting";
+        }
+
+    }
+
+    // -----------------------------------------------
+    // Execution
+    // -----------------------------------------------
+
+    /**
+     * Produces the next block, or null at the end of the input.
+     */
+    private interface Source {
+
+        Block next() throws IOException;
+
+    }
+
+    /**
+     * Processes one block in place.
+     */
+    private interface Task {
+
+        void accept(Block block) throws IOException;
+
+    }
+
+    /**
+     * One run of a pipeline: a thread per stage and a bounded queue between
+     * each pair of consecutive stages. The threads start in {@link #await()};
+     * the first stage to fail interrupts every other one, and its exception
+     * is rethrown by {@link #await()}. A stage blocked reading or writing a
+     * stream is not interruptible, so the run ends once that call returns.
+     */
+    private final class Run {
+
+        private final List<Thread> threads = new ArrayList<>();
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+        private BlockingQueue<Block> tail;
+
+        void source(Stage stage, Source source) {
+            BlockingQueue<Block> out = new ArrayBlockingQueue<>(queueBlocks);
+            add(stage, () -> {
+                while (true) {
+                    long started = System.nanoTime();
+                    Block block = source.next();
+                    long done = System.nanoTime();
+                    if (block == null) {
+                        out.put(END);
+                        return;
+                    }
+                    stage.record(block.count, done - started);
+                    out.put(block);
+                    stage.waitNanos.add(System.nanoTime() - done);
+                }
+            });
+            tail = out;
+        }
+
+        void stage(Stage stage, Task task) {
+            BlockingQueue<Block> out = new ArrayBlockingQueue<>(queueBlocks);
+            connect(stage, task, tail, out);
+            tail = out;
+        }
+
+        void sink(Stage stage, Task task) {
+            connect(stage, task, tail, null);
+            tail = null;
+        }
+
+        private void connect(Stage stage, Task task, BlockingQueue<Block> in, BlockingQueue<Block> out) {
+            add(stage, () -> {
+                while (true) {
+                    long waiting = System.nanoTime();
+                    Block block = in.take();
+                    long started = System.nanoTime();
+                    stage.waitNanos.add(started - waiting);
+                    if (block == END) {
+                        if (out != null) {
+                            out.put(END);
+                        }
+                        return;
+                    }
+                    task.accept(block);
+                    long done = System.nanoTime();
+                    stage.record(block.count, done - started);
+                    if (out != null) {
+                        out.put(block);
+                        stage.waitNanos.add(System.nanoTime() - done);
+                    }
+                }
+            });
+        }
+
+        private void add(Stage stage, Body body) {
+            Thread thread = new Thread(() -> {
+                try {
+                    body.run();
+                } catch (InterruptedException e) {
+                    // Stopped because another stage failed
+                } catch (Throwable e) {
+                    if (failure.compareAndSet(null, e)) {
+                        stop();
+                    }
+                }
+            }, "huffman-" + stage.name);
+            thread.setDaemon(true);
+            threads.add(thread);
+        }
+
+        private void stop() {
+            for (Thread thread : threads) {
+                thread.interrupt();
+            }
+        }
+
+        /**
+         * Starts every stage and waits for all of them to finish.
+         *
+         * @throws IOException if a stage failed with one, or the calling
+         *                     thread was interrupted while waiting
+         */
+        void await() throws IOException {
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            // A stage that failed before the last one started could not interrupt it
+            if (failure.get() != null) {
+                stop();
+            }
+            try {
+                for (Thread thread : threads) {
+                    thread.join();
+                }
+            } catch (InterruptedException e) {
+                stop();
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the Huffman pipeline");
+            }
+            Throwable e = failure.get();
+            if (e instanceof IOException) {
+                throw (IOException) e;
+            }
+            if (e instanceof RuntimeException) {
+                throw (RuntimeException) e;
+            }
+            if (e instanceof Error) {
+                throw (Error) e;
+            }
+        }
+
+    }
+
+    /**
+     * The loop a stage's thread runs.
+     */
+    private interface Body {
+
+        void run() throws IOException, InterruptedException;
+
+    }
+
+}
@@ -0,0 +1,153 @@
+package huffman;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class HuffmanPipelineTests {
+
+    private static String message(int chars) {
+        String corpus = "the quick brown fox jumps over the lazy dog é中";
+        StringBuilder message = new StringBuilder();
+        while (message.length() < chars) {
+            message.append(corpus);
+        }
+        return message.substring(0, chars);
+    }
+
+    @Test
+    public void pipeline_t0() throws IOException {
+        Huffman h = new Huffman(message(100));
+        HuffmanPipeline pipeline = new HuffmanPipeline(h, 1);
+        for (int length : new int[]{0, 1, HuffmanContainer.DEFAULT_BLOCK_CHARS, 3 * HuffmanContainer.DEFAULT_BLOCK_CHARS + 7}) {
+            byte[] text = message(length).getBytes(StandardCharsets.UTF_8);
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            h.compress(new ByteArrayInputStream(text), expected);
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            pipeline.compress(new ByteArrayInputStream(text), compressed);
+            assertArrayEquals(expected.toByteArray(), compressed.toByteArray());
+
+            ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+            pipeline.decompress(new ByteArrayInputStream(compressed.toByteArray()), decompressed);
+            assertArrayEquals(text, decompressed.toByteArray());
+        }
+        // Any container, not just streamed ones, decompresses
+        String seekable = message(2 * HuffmanContainer.DEFAULT_BLOCK_CHARS + 1);
+        ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+        pipeline.decompress(new ByteArrayInputStream(h.compressSeekable(seekable)), decompressed);
+        assertEquals(seekable, new String(decompressed.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void pipeline_t1() throws IOException {
+        Huffman h = new Huffman(message(100));
+        HuffmanPipeline pipeline = new HuffmanPipeline(h);
+        int length = 2 * HuffmanContainer.DEFAULT_BLOCK_CHARS + 5;
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        pipeline.compress(new ByteArrayInputStream(message(length).getBytes(StandardCharsets.UTF_8)), compressed);
+        pipeline.decompress(new ByteArrayInputStream(compressed.toByteArray()), new ByteArrayOutputStream());
+        // Every stage sees every block and char once
+        for (HuffmanPipeline.Stage stage : pipeline.stages()) {
+            assertEquals(stage.name(), 3, stage.blocks());
+            assertEquals(stage.name(), length, stage.chars());
+            assertTrue(stage.name(), stage.charsPerSecond() > 0);
+        }
+        assertEquals(3L, pipeline.snapshot().get("compress.encode.blocks"));
+        // The model's own metrics include pipeline traffic
+        assertEquals(length, h.metrics().compressedChars());
+        assertEquals(compressed.size(), h.metrics().compressedBytes());
+        assertEquals(length, h.metrics().decompressedChars());
+    }
+
+    @Test(timeout = 10000)
+    public void pipeline_t2() throws Exception {
+        Huffman h = new Huffman(message(100));
+        HuffmanPipeline pipeline = new HuffmanPipeline(h, 1);
+        int blocks = 40;
+        byte[] text = new byte[blocks * HuffmanContainer.DEFAULT_BLOCK_CHARS];
+        byte[] pattern = "the lazy dog ".getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < text.length; i++) {
+            text[i] = pattern[i % pattern.length];
+        }
+        AtomicLong read = new AtomicLong();
+        InputStream in = new ByteArrayInputStream(text) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                int n = super.read(b, off, len);
+                read.addAndGet(Math.max(0, n));
+                return n;
+            }
+        };
+        // A disk that stalls after the header until released
+        CountDownLatch release = new CountDownLatch(1);
+        OutputStream out = new ByteArrayOutputStream() {
+            @Override
+            public synchronized void write(byte[] b, int off, int len) {
+                try {
+                    if (size() > 0) {
+                        release.await();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.write(b, off, len);
+            }
+        };
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread compressor = new Thread(() -> {
+            try {
+                pipeline.compress(in, out);
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        });
+        compressor.start();
+        // With the writer stalled, the stages and queues fill up with 5 + 4
+        // blocks and the reader blocks handing on its last one; it produces
+        // no more until the writer is released
+        HuffmanPipeline.Stage reader = pipeline.stages().get(0);
+        while (reader.blocks() < 9 && compressor.isAlive()) {
+            Thread.sleep(1);
+        }
+        assertEquals(9, reader.blocks());
+        // Read ahead is bounded by those blocks, plus the decoder's buffer
+        assertTrue(read.get() <= 10L * HuffmanContainer.DEFAULT_BLOCK_CHARS);
+        release.countDown();
+        compressor.join();
+        assertNull(failure.get());
+        assertEquals(text.length, read.get());
+        assertEquals(blocks, pipeline.stages().get(4).blocks());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void pipeline_t3() throws IOException {
+        HuffmanPipeline pipeline = new HuffmanPipeline(new Huffman("ABBBCC"), 1);
+        StringBuilder text = new StringBuilder();
+        while (text.length() < 3 * HuffmanContainer.DEFAULT_BLOCK_CHARS) {
+            text.append("BABCBC");
+        }
+        text.append('D');
+        // The model stage's failure stops every other stage, and surfaces here
+        pipeline.compress(new ByteArrayInputStream(text.toString().getBytes(StandardCharsets.UTF_8)),
+                new ByteArrayOutputStream());
+    }
+
+    @Test(expected = IOException.class)
+    public void pipeline_t4() throws IOException {
+        Huffman h = new Huffman(message(100));
+        HuffmanPipeline pipeline = new HuffmanPipeline(h, 1);
+        byte[] compressed = h.compressContainer(message(3 * HuffmanContainer.DEFAULT_BLOCK_CHARS));
+        compressed[compressed.length / 2] ^= 1;
+        pipeline.decompress(new ByteArrayInputStream(compressed), new ByteArrayOutputStream());
+    }
+
+}
@@ -0,0 +1,136 @@
+package huffman;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+
+/*
+ * Author: Cooper LaRhette
+ */
+
+/**
+ * Random access to the text of an indexed container stored in a file (or
+ * any other seekable channel), without reading the container into memory.
+ * The header and block index are parsed once, when the reader is created;
+ * each {@link #read(long, int)} then reads, checksums and decodes only the
+ * blocks holding the requested range. With a container from
+ * {@link Huffman#compressSeekable(java.nio.file.Path, java.nio.file.Path)}
+ * or {@link Huffman#compressSeekable(String)}, decoding also starts at the
+ * last sync point before the range, so a point lookup costs one block read
+ * and at most {@link HuffmanContainer#DEFAULT_SYNC_CHARS} decoded chars,
+ * however large the file.
+ * <p>
+ * Containers without an index (those written by
+ * {@link Huffman#compress(java.io.InputStream, java.io.OutputStream)} or
+ * {@link Huffman#compress(java.nio.file.Path, java.nio.file.Path)}) cannot
+ * be read this way. A reader is thread-safe; concurrent reads serialize
+ * only while reading block bytes from the channel, which is not closed by
+ * the reader.
+ */
+public final class HuffmanRangeReader {
+
+    private final Huffman model;
+    private final SeekableByteChannel channel;
+
+    // Channel position of the container's first byte
+    private final long base;
+    private final HuffmanContainer header;
+
+    /**
+     * Parses the header and block index of the container starting at the
+     * channel's current position.
+     *
+     * @param model   Model the container was compressed with
+     * @param channel Channel holding the container from its position to its end
+     * @throws IOException if reading fails, the container is malformed, or it
+     *                     has no block index
+     */
+    public HuffmanRangeReader(Huffman model, SeekableByteChannel channel) throws IOException {
+        this.model = model;
+        this.channel = channel;
+        synchronized (channel) {
+            base = channel.position();
+            header = new HuffmanContainer(new BufferedInputStream(Channels.newInputStream(channel)),
+                    channel.size() - base);
+        }
+        if (header.blockStarts == null) {
+            throw new IOException("Container has no block index; use Huffman.decompress");
+        }
+    }
+
+    /**
+     * @return Number of chars in the container's message.
+     */
+    public long length() {
+        return header.symbolCount;
+    }
+
+    /**
+     * Decodes only the chars [from, from + length) of the container's message.
+     *
+     * @param from   Index in the message of the first char to decode
+     * @param length Number of chars to decode
+     * @return The chars of the message in the given range.
+     * @throws IOException              if reading fails, or a block the range
+     *                                  touches is malformed, truncated or
+     *                                  fails its checksum
+     * @throws IllegalArgumentException if the range is out of bounds, or a
+     *                                  block's bitstring is corrupt
+     */
+    public String read(long from, int length) throws IOException {
+        long start = System.nanoTime();
+        if (from < 0 || length < 0 || from > header.symbolCount - length) {
+            throw new IllegalArgumentException("Range [" + from + ", " + (from + length)
+                    + ") is outside the container's " + header.symbolCount + " characters");
+        }
+        char[] result = new char[length];
+        long bytesRead = 0;
+        int decoded = 0;
+        while (decoded < length) {
+            long index = from + decoded;
+            int b = (int) (index / header.blockChars);
+            byte[] frame = readFrame(b);
+            HuffmanContainer block = header.frameReader(frame);
+            if (!block.nextBlock() || block.blockCount != block.indexedBlockChars(b)) {
+                throw new IOException("Container block " + b + " does not match its index");
+            }
+            bytesRead += frame.length;
+            int first = (int) (index - (long) b * header.blockChars);
+            int count = Math.min(length - decoded, block.blockCount - first);
+            model.decodeCurrentBlock(block, first, result, decoded, count);
+            decoded += count;
+        }
+        model.metrics().recordDecompress(bytesRead, length, System.nanoTime() - start);
+        return new String(result);
+    }
+
+    /**
+     * @param b Index of a block
+     * @return The block's bytes, exactly as framed in the container.
+     * @throws IOException if reading fails or the channel ends early
+     */
+    private byte[] readFrame(int b) throws IOException {
+        long size = header.blockStarts[b + 1] - header.blockStarts[b];
+        // No genuine block is larger: codes, sync points or jump table, framing
+        long maxSize = HuffmanContainer.MAX_FRAME_BYTES + HuffmanContainer.JUMP_TABLE_BYTES
+                + ((long) header.blockChars * CodeTable.MAX_CODE_LENGTH + 7) / 8
+                + (long) HuffmanContainer.SYNC_POINT_BYTES * header.blockChars;
+        if (size > maxSize) {
+            throw new IOException("Container block " + b + " is larger than any block can be");
+        }
+        ByteBuffer frame = ByteBuffer.allocate((int) size);
+        synchronized (channel) {
+            channel.position(base + header.blockStarts[b]);
+            while (frame.hasRemaining()) {
+                if (channel.read(frame) < 0) {
+                    throw new EOFException("Huffman container is truncated");
+                }
+            }
+        }
+        return frame.array();
+    }
+
+}
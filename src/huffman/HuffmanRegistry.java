@@ -0,0 +1,298 @@
+package huffman;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
+
+/*
+ * Author: Cooper LaRhette
+ */
+
+/**
+ * Thread-safe registry of trained Huffman models, so one model per
+ * distribution can be shared by every thread and every payload instead of
+ * retrained wherever it is needed. Models are looked up by id, or by a hash
+ * of their serialized code lengths to find an identical model registered
+ * under another id. The registry holds at most a fixed number of models
+ * and evicts the least recently used one beyond that; an evicted model is
+ * reloaded from the model source, if one was given, the next time it is
+ * needed.
+ * <p>
+ * Payloads written by {@link #compress(String, String)} name their model, so
+ * {@link #decompress(byte[])} needs nothing else. Formatted as:
+ * <pre>
+ * version (1 byte) | varint id length | UTF-8 model id | model hash (8 bytes) |
+ * container as written by {@link Huffman#compressContainer(String)}
+ * </pre>
+ * The hash guards against a model id reused for a different model: such a
+ * payload is rejected rather than decoded into garbage.
+ */
+public final class HuffmanRegistry {
+
+    private static final int PAYLOAD_VERSION = 1;
+
+    private static final int HASH_BYTES = 8;
+
+    private final int maxModels;
+    private final Function<String, byte[]> modelSource;
+
+    // Guarded by this; iteration order is least to most recently used
+    private final LinkedHashMap<String, Entry> models;
+    private final Map<Long, String> idsByHash = new HashMap<>();
+
+    /**
+     * Creates a registry that only knows the models registered with it.
+     *
+     * @param maxModels Number of models to hold before evicting the least
+     *                  recently used one, at least 1
+     */
+    public HuffmanRegistry(int maxModels) {
+        this(maxModels, null);
+    }
+
+    /**
+     * Creates a registry that loads models it does not hold from the given
+     * source, e.g. a model store keyed by id.
+     *
+     * @param maxModels   Number of models to hold before evicting the least
+     *                    recently used one, at least 1
+     * @param modelSource Returns the model written by {@link Huffman#exportModel()}
+     *                    for an id, or null if there is none; may be null
+     */
+    public HuffmanRegistry(int maxModels, Function<String, byte[]> modelSource) {
+        if (maxModels < 1) {
+            throw new IllegalArgumentException("Registry must hold at least one model");
+        }
+        this.maxModels = maxModels;
+        this.modelSource = modelSource;
+        this.models = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * A registered model with the hash of its serialized form.
+     */
+    private static final class Entry {
+
+        final Huffman model;
+        final long hash;
+
+        Entry(Huffman model, long hash) {
+            this.model = model;
+            this.hash = hash;
+        }
+
+    }
+
+    // -----------------------------------------------
+    // Registration and Lookup
+    // -----------------------------------------------
+
+    /**
+     * Registers a model under the given id, evicting the least recently used
+     * model if the registry is full. Registering the same model again is a
+     * no-op.
+     *
+     * @param id    Id payloads will carry, e.g. "english-v3"
+     * @param model Model to share
+     * @return Hash of the model's serialized code lengths.
+     * @throws IllegalArgumentException if a different model is already
+     *                                  registered under the id
+     */
+    public long register(String id, Huffman model) {
+        long hash = contentHash(model.exportModel());
+        synchronized (this) {
+            Entry existing = models.get(id);
+            if (existing != null) {
+                if (existing.hash != hash) {
+                    throw new IllegalArgumentException("Model id " + id + " is already registered to a different model");
+                }
+                return hash;
+            }
+            models.put(id, new Entry(model, hash));
+            idsByHash.putIfAbsent(hash, id);
+            evict();
+        }
+        return hash;
+    }
+
+    /**
+     * Finds the model with the given id, loading it from the model source
+     * if the registry does not hold it.
+     *
+     * @param id Model id
+     * @return The model, or null if it is neither registered nor available
+     * from the model source.
+     * @throws IllegalArgumentException if the model source returns a malformed model
+     */
+    public Huffman get(String id) {
+        Entry entry = entry(id);
+        return entry == null ? null : entry.model;
+    }
+
+    /**
+     * @param hash Hash of a model's serialized code lengths, as returned by
+     *             {@link #register(String, Huffman)}
+     * @return Id of a held model with that hash, or null if none is held.
+     */
+    public synchronized String idForHash(long hash) {
+        return idsByHash.get(hash);
+    }
+
+    /**
+     * @return Number of models currently held.
+     */
+    public synchronized int size() {
+        return models.size();
+    }
+
+    private Entry entry(String id) {
+        synchronized (this) {
+            Entry entry = models.get(id);
+            if (entry != null || modelSource == null) {
+                return entry;
+            }
+        }
+        // Load outside the lock so a slow source does not stall other lookups
+        byte[] bytes = modelSource.apply(id);
+        if (bytes == null) {
+            return null;
+        }
+        Entry loaded = new Entry(Huffman.loadModel(bytes), contentHash(bytes));
+        synchronized (this) {
+            Entry raced = models.get(id);
+            if (raced != null) {
+                return raced;
+            }
+            models.put(id, loaded);
+            idsByHash.putIfAbsent(loaded.hash, id);
+            evict();
+        }
+        return loaded;
+    }
+
+    /**
+     * Drops least recently used models until at most maxModels remain. A
+     * hash that named an evicted id is repointed to another held id with
+     * the same model, if there is one.
+     */
+    private void evict() {
+        while (models.size() > maxModels) {
+            Map.Entry<String, Entry> eldest = models.entrySet().iterator().next();
+            String evictedId = eldest.getKey();
+            long hash = eldest.getValue().hash;
+            models.remove(evictedId);
+            if (!evictedId.equals(idsByHash.get(hash))) {
+                continue;
+            }
+            idsByHash.remove(hash);
+            for (Map.Entry<String, Entry> held : models.entrySet()) {
+                if (held.getValue().hash == hash) {
+                    idsByHash.put(hash, held.getKey());
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * @param model Serialized model
+     * @return First 8 bytes of the SHA-256 digest of the model.
+     */
+    static long contentHash(byte[] model) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(model);
+            long hash = 0;
+            for (int i = 0; i < HASH_BYTES; i++) {
+                hash = hash << 8 | (digest[i] & 0xFF);
+            }
+            return hash;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is unavailable", e);
+        }
+    }
+
+    // -----------------------------------------------
+    // Payloads
+    // -----------------------------------------------
+
+    /**
+     * Compresses the message with the model registered under the given id,
+     * into a payload naming that model.
+     *
+     * @param id      Id of the model to compress with
+     * @param message String representing the corpus to compress.
+     * @return {@code byte[]} holding the payload, formatted as described above.
+     * @throws IllegalArgumentException if the model is unknown or cannot
+     *                                  encode a character of the message
+     */
+    public byte[] compress(String id, String message) {
+        Entry entry = entry(id);
+        if (entry == null) {
+            throw new IllegalArgumentException("Unknown Huffman model " + id);
+        }
+        byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+        // The container is written in place after the payload header
+        byte[] payload = entry.model.compressContainer(message,
+                1 + HuffmanContainer.varintBytes(idBytes.length) + idBytes.length + HASH_BYTES);
+        int pos = 0;
+        payload[pos++] = PAYLOAD_VERSION;
+        pos = HuffmanContainer.writeVarint(payload, pos, idBytes.length);
+        System.arraycopy(idBytes, 0, payload, pos, idBytes.length);
+        pos += idBytes.length;
+        for (int i = HASH_BYTES - 1; i >= 0; i--) {
+            payload[pos++] = (byte) (entry.hash >>> (8 * i));
+        }
+        return payload;
+    }
+
+    /**
+     * Decompresses a payload written by {@link #compress(String, String)}
+     * with the model it names.
+     *
+     * @param payload {@code byte[]} holding the payload
+     * @return Decompressed String representation of the payload's message.
+     * @throws IllegalArgumentException if the payload is malformed, its model
+     *                                  is unknown or no longer matches its hash
+     */
+    public String decompress(byte[] payload) {
+        return decompress(payload, null);
+    }
+
+    /**
+     * @param executor Executor to decode blocks on, or null to decode them on
+     *                 the calling thread
+     * @see #decompress(byte[])
+     */
+    public String decompress(byte[] payload, ExecutorService executor) {
+        if (payload.length == 0 || payload[0] != PAYLOAD_VERSION) {
+            throw new IllegalArgumentException("Unsupported Huffman payload version");
+        }
+        ByteBuffer in = ByteBuffer.wrap(payload, 1, payload.length - 1);
+        long idLength = HuffmanContainer.readVarint(in);
+        int pos = in.position();
+        if (idLength < 0 || idLength > payload.length - pos - HASH_BYTES) {
+            throw new IllegalArgumentException("Huffman payload is truncated");
+        }
+        String id = new String(payload, pos, (int) idLength, StandardCharsets.UTF_8);
+        pos += (int) idLength;
+        long hash = 0;
+        for (int i = 0; i < HASH_BYTES; i++) {
+            hash = hash << 8 | (payload[pos++] & 0xFF);
+        }
+        Entry entry = entry(id);
+        if (entry == null) {
+            throw new IllegalArgumentException("Unknown Huffman model " + id);
+        }
+        if (entry.hash != hash) {
+            throw new IllegalArgumentException("Huffman model " + id + " does not match the payload's model");
+        }
+        return entry.model.decompressContainer(payload, pos, executor);
+    }
+
+}
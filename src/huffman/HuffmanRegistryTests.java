@@ -0,0 +1,124 @@
+package huffman;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class HuffmanRegistryTests {
+
+    @Test
+    public void registry_t0() {
+        HuffmanRegistry registry = new HuffmanRegistry(4);
+        Huffman h = new Huffman("ABBBCC");
+        long hash = registry.register("abc-v1", h);
+        assertSame(h, registry.get("abc-v1"));
+        assertEquals("abc-v1", registry.idForHash(hash));
+        // An identical model trained elsewhere has the same hash
+        assertEquals(hash, registry.register("abc-v1", new Huffman("CABBCB")));
+        assertNull(registry.get("missing"));
+
+        byte[] payload = registry.compress("abc-v1", "BABCBCCA");
+        assertEquals("BABCBCCA", registry.decompress(payload));
+        // Another registry only needs the same model under the same id
+        HuffmanRegistry other = new HuffmanRegistry(4);
+        other.register("abc-v1", Huffman.loadModel(h.exportModel()));
+        assertEquals("BABCBCCA", other.decompress(payload));
+    }
+
+    @Test
+    public void registry_t1() {
+        HuffmanRegistry registry = new HuffmanRegistry(2);
+        registry.register("a", new Huffman("A"));
+        registry.register("b", new Huffman("AB"));
+        registry.get("a");
+        registry.register("c", new Huffman("ABC"));
+        // "b" was least recently used
+        assertEquals(2, registry.size());
+        assertNotNull(registry.get("a"));
+        assertNull(registry.get("b"));
+        assertNotNull(registry.get("c"));
+    }
+
+    @Test
+    public void registry_t2() {
+        Map<String, byte[]> store = new HashMap<>();
+        store.put("abc-v1", new Huffman("ABBBCC").exportModel());
+        store.put("xyz-v1", new Huffman("XYZZZ").exportModel());
+        HuffmanRegistry registry = new HuffmanRegistry(1, store::get);
+        byte[] abc = registry.compress("abc-v1", "CAB");
+        byte[] xyz = registry.compress("xyz-v1", "ZYX");
+        // Each model evicts the other, and is reloaded from the store
+        assertEquals("CAB", registry.decompress(abc));
+        assertEquals("ZYX", registry.decompress(xyz));
+        assertEquals(1, registry.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void registry_t3() {
+        HuffmanRegistry registry = new HuffmanRegistry(4);
+        registry.register("abc-v1", new Huffman("ABBBCC"));
+        byte[] payload = registry.compress("abc-v1", "CAB");
+        // Same id, different model: the payload must not decode with it
+        HuffmanRegistry other = new HuffmanRegistry(4);
+        other.register("abc-v1", new Huffman("AAABBC"));
+        other.decompress(payload);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void registry_t4() {
+        HuffmanRegistry registry = new HuffmanRegistry(4);
+        registry.register("abc-v1", new Huffman("ABBBCC"));
+        registry.register("abc-v1", new Huffman("AAABBC"));
+    }
+
+    @Test
+    public void registry_t5() throws Exception {
+        Map<String, byte[]> store = new HashMap<>();
+        List<String> ids = new ArrayList<>();
+        for (int m = 0; m < 8; m++) {
+            ids.add("model-" + m);
+            store.put("model-" + m, new Huffman("ABCDEFGH".substring(0, m + 1) + "AAAA").exportModel());
+        }
+        HuffmanRegistry registry = new HuffmanRegistry(3, store::get);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int t = 0; t < 64; t++) {
+                int task = t;
+                results.add(executor.submit(() -> {
+                    String id = ids.get(task % ids.size());
+                    String message = "ABCDEFGH".substring(0, task % ids.size() + 1);
+                    return message.equals(registry.decompress(registry.compress(id, message)));
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(registry.size() <= 3);
+    }
+
+    @Test
+    public void registry_t6() {
+        HuffmanRegistry registry = new HuffmanRegistry(2);
+        long hash = registry.register("abc-v1", new Huffman("ABBBCC"));
+        registry.register("abc-v2", new Huffman("CABBCB"));
+        registry.get("abc-v2");
+        // Evicting the id the hash named leaves it naming the surviving copy
+        registry.register("xyz-v1", new Huffman("XYZZZ"));
+        assertNull(registry.get("abc-v1"));
+        assertEquals("abc-v2", registry.idForHash(hash));
+        registry.register("xyz-v2", new Huffman("XYYZ"));
+        assertNull(registry.idForHash(hash));
+    }
+
+}
@@ -3,6 +3,23 @@ package huffman;
 import static org.junit.Assert.*;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32C;
+
 public class HuffmanTests {
 
     @Test
@@ -20,6 +37,63 @@ public class HuffmanTests {
                 + h.encodingMap.get('E')).length());
     }
     
+    @Test
+    public void constructT2() {
+        StringBuilder corpus = new StringBuilder();
+        for (int i = 0; i < 3000000; i++) {
+            corpus.append((char) ('A' + i % 7 * i % 13));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Huffman parallel = new Huffman(corpus.toString(), executor);
+            assertEquals(new Huffman(corpus.toString()).encodingMap, parallel.encodingMap);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void constructT3() {
+        // Fibonacci counts give an unrestricted trie 19 levels deep
+        StringBuilder corpus = new StringBuilder();
+        int prev = 1, curr = 1;
+        for (char c = 'A'; c <= 'T'; c++) {
+            for (int i = 0; i < prev; i++) {
+                corpus.append(c);
+            }
+            int next = prev + curr;
+            prev = curr;
+            curr = next;
+        }
+        Huffman h = new Huffman(corpus.toString(), 8);
+        for (String code : h.encodingMap.values()) {
+            assertTrue(code.length() <= 8);
+        }
+        assertEquals(corpus.toString(), h.decompressContainer(h.compressContainer(corpus.toString())));
+    }
+
+    @Test
+    public void constructT4() {
+        // A limit the trie already satisfies leaves the codes unchanged
+        Huffman h = new Huffman("ACADACBABE", 15);
+        assertEquals(new Huffman("ACADACBABE").encodingMap, h.encodingMap);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructT5() {
+        // 5 characters cannot all get distinct 2-bit codes
+        new Huffman("ABBCCCDDDDDEEEEEEEE", 2);
+    }
+
+    @Test
+    public void constructT6() {
+        // Doubling counts give the deepest possible trie: 1, 1, 2, 4, 8
+        assertArrayEquals(new byte[]{4, 4, 3, 2, 1}, Huffman.codeLengths(new int[]{1, 1, 2, 4, 8}));
+        // Unused symbols get no code, a lone symbol still gets 1 bit
+        assertArrayEquals(new byte[]{0, 0, 1}, Huffman.codeLengths(new int[]{0, 0, 7, 0}));
+        assertArrayEquals(new byte[]{2, 2, 2, 2}, Huffman.codeLengths(new int[]{5, 5, 5, 5}));
+    }
+
     // Compression Tests
     // -----------------------------------------------
     @Test
@@ -62,6 +136,31 @@ public class HuffmanTests {
         byte[] compressed = {6, 77, -128};
         assertArrayEquals(compressed, h.compress("BABCBC"));
     }
+
+    @Test
+    public void comp_t4() {
+        Huffman h = new Huffman("AAA");
+        // byte 0: 0000 0011 = 3 (message length = 3)
+        // byte 1: 0000 0000 = 0 (0 = "A", a lone character still gets 1 bit)
+        byte[] compressed = {3, 0};
+        assertArrayEquals(compressed, h.compress("AAA"));
+    }
+
+    @Test
+    public void comp_t5() {
+        Huffman h = new Huffman("ABBBCC");
+        // byte 0: 0000 1000 = 8 (message length = 8)
+        // byte 1: 1000 0111 = -121 (10 = "A", 0 = "B", C = 11)
+        // byte 2: 1110 0000 = -32
+        byte[] compressed = {8, -121, -32};
+        assertArrayEquals(compressed, h.compress("ABBBCCCB"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void comp_t6() {
+        Huffman h = new Huffman("AB");
+        h.compress("ABC");
+    }
     
     
     // Decompression Tests
@@ -103,5 +202,648 @@ public class HuffmanTests {
         byte[] compressed = {6, 77, -128};
         assertEquals("BABCBC", h.decompress(compressed));
     }
-    
+
+    @Test
+    public void decom_t5() {
+        Huffman h = new Huffman("ABBBCC");
+        // byte 0: 0000 0100 = 4 (message length = 4)
+        // byte 1: 1010 1010 = -86 (10 = "A"), no padding on the final byte
+        byte[] compressed = {4, -86};
+        assertEquals("AAAA", h.decompress(compressed));
+    }
+
+    @Test
+    public void decom_t6() {
+        // Fibonacci counts give the rarest characters codes longer than
+        // the decoder's direct lookup width
+        StringBuilder corpus = new StringBuilder();
+        int prev = 1, curr = 1;
+        for (char c = 'A'; c <= 'T'; c++) {
+            for (int i = 0; i < prev; i++) {
+                corpus.append(c);
+            }
+            int next = prev + curr;
+            prev = curr;
+            curr = next;
+        }
+        Huffman h = new Huffman(corpus.toString());
+        String message = "ABCDEFGHIJKLMNOPQRST" + corpus.substring(0, 100);
+        assertEquals(message, h.decompress(h.compress(message)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decom_t7() {
+        Huffman h = new Huffman("ABBBCC");
+        // 6 characters promised but only 8 bits follow
+        byte[] compressed = {6, -121};
+        h.decompress(compressed);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decom_t8() {
+        Huffman h = new Huffman("ABBBCC");
+        assertArrayEquals(new byte[]{0}, h.compress(""));
+        // Not even the length byte
+        h.decompress(new byte[0]);
+    }
+
+
+    // Streaming Tests
+    // -----------------------------------------------
+    @Test
+    public void stream_t0() throws IOException {
+        Huffman h = new Huffman("ABBBCC");
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        h.compress(new ByteArrayInputStream("BABCBC".getBytes(StandardCharsets.UTF_8)), compressed);
+        byte[] result = compressed.toByteArray();
+        // header: 'H' 'U' 'F', version 1, streamed flag, 65536 chars per block
+        byte[] header = {'H', 'U', 'F', 1, 1, -128, -128, 4};
+        assertArrayEquals(header, Arrays.copyOf(result, header.length));
+        // block: 6 chars in 2 bytes, 4 checksum bytes, 0100 1101 = 77, 1000 0000 = -128
+        assertEquals(6, result[8]);
+        assertEquals(2, result[9]);
+        assertEquals(77, result[14]);
+        assertEquals(-128, result[15]);
+        // end block
+        assertEquals(0, result[16]);
+        assertEquals(17, result.length);
+    }
+
+    @Test
+    public void stream_t1() throws IOException {
+        String corpus = "the quick brown fox jumps over the lazy dog \u00e9\u4e2d";
+        Huffman h = new Huffman(corpus);
+        StringBuilder message = new StringBuilder();
+        while (message.length() < 3 * HuffmanContainer.DEFAULT_BLOCK_CHARS) {
+            message.append(corpus);
+        }
+        byte[] original = message.toString().getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        h.compress(Channels.newChannel(new ByteArrayInputStream(original)), Channels.newChannel(compressed));
+        ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+        h.decompress(Channels.newChannel(new ByteArrayInputStream(compressed.toByteArray())), Channels.newChannel(decompressed));
+        assertArrayEquals(original, decompressed.toByteArray());
+    }
+
+    @Test(expected = IOException.class)
+    public void stream_t2() throws IOException {
+        Huffman h = new Huffman("ABBBCC");
+        // First block promises 2 bytes of bitstring, but the stream ends after 1
+        byte[] truncated = {'H', 'U', 'F', 1, 1, -128, -128, 4, 6, 2, 0, 0, 0, 0, 77};
+        h.decompress(new ByteArrayInputStream(truncated), new ByteArrayOutputStream());
+    }
+
+
+    // Interleaved Container Tests
+    // -----------------------------------------------
+    @Test
+    public void interleave_t0() throws IOException {
+        String corpus = "the quick brown fox jumps over the lazy dog \u00e9\u4e2d";
+        Huffman h = new Huffman(corpus);
+        StringBuilder message = new StringBuilder();
+        while (message.length() < 2 * HuffmanContainer.DEFAULT_BLOCK_CHARS + 3) {
+            message.append(corpus);
+        }
+        // Odd lengths leave the last round of streams partially filled
+        for (int length : new int[]{0, 1, 3, 6, message.length()}) {
+            String original = message.substring(0, length);
+            byte[] compressed = h.compressInterleaved(original);
+            assertEquals(HuffmanContainer.FLAG_INDEXED | HuffmanContainer.FLAG_INTERLEAVED, compressed[4]);
+            assertEquals(original, h.decompressContainer(compressed));
+            ExecutorService executor = Executors.newFixedThreadPool(2);
+            try {
+                assertArrayEquals(compressed, h.compressInterleaved(original, executor));
+                assertEquals(original, h.decompressContainer(compressed, executor));
+            } finally {
+                executor.shutdown();
+            }
+            ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+            h.decompress(new ByteArrayInputStream(compressed), decompressed);
+            assertEquals(original, new String(decompressed.toByteArray(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void interleave_t1() {
+        Huffman h = new Huffman("ABBBCC");
+        byte[] compressed = h.compressInterleaved("BABCBC");
+        // header: 'H' 'U' 'F', version 1, indexed | interleaved flags,
+        // 65536 chars per block, 6 chars, index of 1 block of 22 bytes
+        byte[] header = {'H', 'U', 'F', 1, 6, -128, -128, 4, 6, 1, 22};
+        assertArrayEquals(header, Arrays.copyOf(compressed, header.length));
+        // block: 6 chars in 16 bytes, 4 checksum bytes, jump table of 3 1-byte
+        // streams, then BB = 0000 0000, AC = 1011 0000, B, C = 1100 0000
+        assertEquals(6, compressed[11]);
+        assertEquals(16, compressed[12]);
+        assertEquals(1, compressed[20]);
+        assertEquals(1, compressed[24]);
+        assertEquals(1, compressed[28]);
+        assertEquals(0, compressed[29]);
+        assertEquals(-80, compressed[30]);
+        assertEquals(0, compressed[31]);
+        assertEquals(-64, compressed[32]);
+        // end block
+        assertEquals(0, compressed[33]);
+        assertEquals(34, compressed.length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void interleave_t2() {
+        Huffman h = new Huffman("ABBBCC");
+        byte[] compressed = h.compressInterleaved("BABCBC");
+        // Claim stream 0 runs past the block, and re-sign the block so the
+        // checksum still passes and only the jump table is at fault
+        compressed[20] = 100;
+        CRC32C crc = new CRC32C();
+        crc.update(compressed, 17, 16);
+        int checksum = (int) crc.getValue();
+        for (int i = 0; i < 4; i++) {
+            compressed[13 + i] = (byte) (checksum >>> (24 - 8 * i));
+        }
+        h.decompressContainer(compressed);
+    }
+
+
+    // Seekable Container Tests
+    // -----------------------------------------------
+    @Test
+    public void seek_t0() {
+        String corpus = "the quick brown fox jumps over the lazy dog \u00e9\u4e2d";
+        Huffman h = new Huffman(corpus);
+        StringBuilder builder = new StringBuilder();
+        while (builder.length() < 2 * HuffmanContainer.DEFAULT_BLOCK_CHARS + 5) {
+            builder.append(corpus);
+        }
+        String message = builder.toString();
+        byte[] seekable = h.compressSeekable(message);
+        assertEquals(HuffmanContainer.FLAG_INDEXED | HuffmanContainer.FLAG_SEEKABLE, seekable[4]);
+        assertEquals(message, h.decompressContainer(seekable));
+        int sync = HuffmanContainer.DEFAULT_SYNC_CHARS, block = HuffmanContainer.DEFAULT_BLOCK_CHARS;
+        // Ranges on, either side of and across sync points and blocks
+        int[][] ranges = {{0, 0}, {0, 1}, {sync - 1, 2}, {sync, sync}, {5 * sync + 7, 3 * sync},
+                {block - 3, 6}, {block - 1, block + 2}, {message.length() - 1, 1}, {0, message.length()}};
+        byte[][] containers = {seekable, h.compressContainer(message), h.compressInterleaved(message)};
+        for (byte[] container : containers) {
+            for (int[] range : ranges) {
+                assertEquals(message.substring(range[0], range[0] + range[1]),
+                        h.decompressRange(container, range[0], range[1]));
+            }
+        }
+    }
+
+    @Test
+    public void seek_t1() {
+        Huffman h = new Huffman("ABBBCC");
+        byte[] compressed = h.compressSeekable("BABCBC");
+        // header: 'H' 'U' 'F', version 1, indexed | seekable flags, 65536
+        // chars per block, 6 chars, 1024 chars per sync point, index of 1
+        // block of 8 bytes; a block shorter than a sync point has none
+        byte[] header = {'H', 'U', 'F', 1, 10, -128, -128, 4, 6, -128, 8, 1, 8};
+        assertArrayEquals(header, Arrays.copyOf(compressed, header.length));
+        assertArrayEquals(Arrays.copyOfRange(h.compressContainer("BABCBC"), 11, 19),
+                Arrays.copyOfRange(compressed, 13, 21));
+        assertEquals("CBC", h.decompressRange(compressed, 3, 3));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void seek_t2() {
+        Huffman h = new Huffman("ABBBCC");
+        StringBuilder message = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            message.append("BABCBC");
+        }
+        byte[] compressed = h.compressContainer(message.toString());
+        h.decompressRange(compressed, 5990, 11);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void seek_t3() throws IOException {
+        Huffman h = new Huffman("ABBBCC");
+        ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+        h.compress(new ByteArrayInputStream("BABCBC".getBytes(StandardCharsets.UTF_8)), streamed);
+        // Streamed containers have no index to seek with
+        h.decompressRange(streamed.toByteArray(), 0, 1);
+    }
+
+
+    // Metrics Tests
+    // -----------------------------------------------
+    @Test
+    public void metrics_t0() {
+        Huffman h = new Huffman("ABBBCC");
+        HuffmanMetrics metrics = h.metrics();
+        // A = 1/6, B = 1/2, C = 1/3, coded in 2, 1 and 2 bits
+        double entropy = (Math.log(6) / 6 + Math.log(2) / 2 + Math.log(3) / 3) / Math.log(2);
+        assertEquals(entropy, metrics.modelEntropy(), 1e-9);
+        assertEquals(1.5, metrics.modelCodeLength(), 1e-9);
+        assertTrue(Double.isNaN(metrics.averageCodeLength()));
+
+        byte[] compressed = h.compress("BABCBC");
+        assertEquals(6, metrics.compressedChars());
+        assertEquals(compressed.length, metrics.compressedBytes());
+        assertEquals(1.5, metrics.averageCodeLength(), 1e-9);
+        h.compress("BBBB");
+        assertEquals(10, metrics.compressedChars());
+        assertEquals(1.3, metrics.averageCodeLength(), 1e-9);
+        assertEquals(2, metrics.compressLatency().count());
+
+        h.decompressContainer(h.compressContainer("ABBBCCCB"));
+        assertEquals(8, metrics.decompressedChars());
+        assertEquals(1, metrics.decompressLatency().count());
+        assertEquals(3L, metrics.snapshot().get("compress.calls"));
+    }
+
+    @Test
+    public void metrics_t1() throws IOException {
+        Huffman h = new Huffman("ABBBCC");
+        try {
+            h.compress("ABDXB");
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals(2, h.metrics().unseenChars());
+        }
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        h.compress(new ByteArrayInputStream("BABCBC".getBytes(StandardCharsets.UTF_8)), compressed);
+        assertEquals(compressed.size(), h.metrics().compressedBytes());
+        h.decompress(new ByteArrayInputStream(compressed.toByteArray()), new ByteArrayOutputStream());
+        assertEquals(compressed.size(), h.metrics().decompressedBytes());
+        assertEquals(6, h.metrics().decompressedChars());
+    }
+
+    @Test
+    public void metrics_t2() {
+        HuffmanMetrics.LatencyHistogram histogram = new HuffmanMetrics(
+                CodeTable.canonical(new byte[]{1, 1}), null).compressLatency();
+        assertEquals(0, histogram.percentile(0.5));
+        histogram.record(0);
+        histogram.record(100);
+        histogram.record(1000);
+        histogram.record(1000);
+        assertEquals(4, histogram.count());
+        // 100 falls in [64, 128), 1000 in [512, 1024)
+        assertEquals(127, histogram.percentile(0.5));
+        assertEquals(1023, histogram.percentile(0.99));
+    }
+
+    @Test
+    public void metrics_t3() {
+        Huffman h = new Huffman("ABBBCC");
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 3 * HuffmanContainer.DEFAULT_BLOCK_CHARS; i++) {
+            builder.append("BABCBC".charAt(i % 6));
+        }
+        // Unseen chars in the first and last blocks
+        builder.setCharAt(7, 'D');
+        builder.append('D');
+        String message = builder.toString();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            long unseen = 0;
+            for (ExecutorService blockExecutor : new ExecutorService[]{null, executor}) {
+                for (int format = 0; format < 3; format++) {
+                    try {
+                        if (format == 0) {
+                            h.compressContainer(message, blockExecutor);
+                        } else if (format == 1) {
+                            h.compressInterleaved(message, blockExecutor);
+                        } else {
+                            h.compressSeekable(message);
+                        }
+                        fail();
+                    } catch (IllegalArgumentException expected) {
+                        // The blocks that did encode count for nothing
+                    }
+                    // Every unseen char counts, whichever block failed first
+                    unseen += 2;
+                    assertEquals(unseen, h.metrics().unseenChars());
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(0, h.metrics().compressedChars());
+    }
+
+    // Concurrency Tests
+    // -----------------------------------------------
+    @Test
+    public void concurrency_t0() throws Exception {
+        String corpus = "the quick brown fox jumps over the lazy dog \u00e9\u4e2d";
+        Huffman h = new Huffman(corpus);
+        // Expected results, computed on this thread before any sharing
+        String[] messages = new String[16];
+        byte[][] legacy = new byte[messages.length][];
+        byte[][] containers = new byte[messages.length][];
+        for (int m = 0; m < messages.length; m++) {
+            StringBuilder message = new StringBuilder();
+            for (int i = 0; i < 40 + 1000 * m; i++) {
+                message.append(corpus.charAt((i * (m + 7)) % corpus.length()));
+            }
+            messages[m] = message.toString();
+            legacy[m] = h.compress(messages[m].substring(0, 40));
+            containers[m] = h.compressContainer(messages[m]);
+        }
+
+        int threads = 256;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Void>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                results.add(executor.submit(() -> {
+                    start.await();
+                    for (int round = 0; round < 20; round++) {
+                        int m = (thread + round) % messages.length;
+                        assertArrayEquals(legacy[m], h.compress(messages[m].substring(0, 40)));
+                        assertEquals(messages[m].substring(0, 40), h.decompress(legacy[m]));
+                        assertArrayEquals(containers[m], h.compressContainer(messages[m]));
+                        assertEquals(messages[m], h.decompressContainer(containers[m]));
+                        assertEquals(messages[m], h.decompressContainer(h.compressInterleaved(messages[m])));
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<Void> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(2 * messages.length + threads * 20 * 3, h.metrics().compressLatency().count());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void concurrency_t1() {
+        Huffman h = new Huffman("ABBBCC");
+        h.encodingMap.put('A', "1");
+    }
+
+    // Memory-Mapped File Tests
+    // -----------------------------------------------
+    @Test
+    public void file_t0() throws IOException {
+        String corpus = "the quick brown fox jumps over the lazy dog \u00e9\u4e2d";
+        Huffman h = new Huffman(corpus);
+        StringBuilder message = new StringBuilder();
+        while (message.length() < 2 * HuffmanContainer.DEFAULT_BLOCK_CHARS) {
+            message.append(corpus);
+        }
+        byte[] original = message.toString().getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+        h.compress(new ByteArrayInputStream(original), streamed);
+        Path in = Files.createTempFile("huffman", ".txt");
+        Path out = Files.createTempFile("huffman", ".huf");
+        try {
+            Files.write(in, original);
+            // Odd-sized windows split multi-byte characters across mappings
+            h.compress(in, out, 4099);
+            assertArrayEquals(streamed.toByteArray(), Files.readAllBytes(out));
+            h.compress(in, out);
+            assertArrayEquals(streamed.toByteArray(), Files.readAllBytes(out));
+        } finally {
+            Files.delete(in);
+            Files.delete(out);
+        }
+    }
+
+    @Test
+    public void file_t1() throws IOException {
+        Huffman h = new Huffman("ABBBCC");
+        Path in = Files.createTempFile("huffman", ".txt");
+        Path out = Files.createTempFile("huffman", ".huf");
+        try {
+            h.compress(in, out);
+            ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+            h.decompress(new ByteArrayInputStream(Files.readAllBytes(out)), decompressed);
+            assertEquals(0, decompressed.size());
+        } finally {
+            Files.delete(in);
+            Files.delete(out);
+        }
+    }
+
+    @Test
+    public void file_t2() throws IOException {
+        String corpus = "the quick brown fox jumps over the lazy dog \u00e9\u4e2d";
+        Huffman h = new Huffman(corpus);
+        StringBuilder builder = new StringBuilder();
+        while (builder.length() < 2 * HuffmanContainer.DEFAULT_BLOCK_CHARS + 5) {
+            builder.append(corpus);
+        }
+        String message = builder.toString();
+        Path in = Files.createTempFile("huffman", ".txt");
+        Path out = Files.createTempFile("huffman", ".huf");
+        try {
+            Files.write(in, message.getBytes(StandardCharsets.UTF_8));
+            h.compressSeekable(in, out, 4099);
+            assertArrayEquals(h.compressSeekable(message), Files.readAllBytes(out));
+            int sync = HuffmanContainer.DEFAULT_SYNC_CHARS, block = HuffmanContainer.DEFAULT_BLOCK_CHARS;
+            int[][] ranges = {{0, 0}, {0, 1}, {sync - 1, 2}, {5 * sync + 7, 3 * sync}, {block - 3, 6},
+                    {block - 1, block + 2}, {message.length() - 1, 1}, {0, message.length()}};
+            try (FileChannel channel = FileChannel.open(out)) {
+                HuffmanRangeReader reader = new HuffmanRangeReader(h, channel);
+                assertEquals(message.length(), reader.length());
+                for (int[] range : ranges) {
+                    assertEquals(message.substring(range[0], range[0] + range[1]),
+                            reader.read(range[0], range[1]));
+                }
+            }
+        } finally {
+            Files.delete(in);
+            Files.delete(out);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void file_t3() throws IOException {
+        Huffman h = new Huffman("ABBBCC");
+        Path in = Files.createTempFile("huffman", ".txt");
+        Path out = Files.createTempFile("huffman", ".huf");
+        try {
+            Files.write(in, "BABCBC".getBytes(StandardCharsets.UTF_8));
+            h.compress(in, out);
+            // Streamed files have no index to seek with
+            try (FileChannel channel = FileChannel.open(out)) {
+                new HuffmanRangeReader(h, channel);
+            }
+        } finally {
+            Files.delete(in);
+            Files.delete(out);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void file_t4() throws IOException {
+        Huffman h = new Huffman("ABBBCC");
+        StringBuilder message = new StringBuilder();
+        while (message.length() < 2 * HuffmanContainer.DEFAULT_BLOCK_CHARS) {
+            message.append("BABCBC");
+        }
+        byte[] compressed = h.compressSeekable(message.toString());
+        // Flip a bit of the last block; the first still reads cleanly
+        compressed[compressed.length - 2] ^= 1;
+        Path out = Files.createTempFile("huffman", ".huf");
+        try {
+            Files.write(out, compressed);
+            try (FileChannel channel = FileChannel.open(out)) {
+                HuffmanRangeReader reader = new HuffmanRangeReader(h, channel);
+                assertEquals(message.substring(0, 6), reader.read(0, 6));
+                reader.read(message.length() - 6, 6);
+            }
+        } finally {
+            Files.delete(out);
+        }
+    }
+
+
+    // Container Tests
+    // -----------------------------------------------
+    @Test
+    public void container_t0() {
+        Huffman h = new Huffman("ABBBCC");
+        StringBuilder message = new StringBuilder();
+        for (int i = 0; i < 50000; i++) {
+            message.append("BABCBC");
+        }
+        byte[] compressed = h.compressContainer(message.toString());
+        assertEquals(message.toString(), h.decompressContainer(compressed));
+    }
+
+    @Test
+    public void container_t1() throws IOException {
+        Huffman h = new Huffman("ABBBCC");
+        ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+        h.decompress(new ByteArrayInputStream(h.compressContainer("ABBBCCCB")), decompressed);
+        assertEquals("ABBBCCCB", new String(decompressed.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void container_t2() {
+        Huffman h = new Huffman("ABBBCC");
+        byte[] compressed = h.compressContainer("ABBBCCCB");
+        // Flip a bit in the block's bitstring so its checksum no longer matches
+        compressed[compressed.length - 2] ^= 1;
+        h.decompressContainer(compressed);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void container_t3() {
+        Huffman h = new Huffman("AB");
+        // The legacy format's one-byte header cannot describe 256 characters
+        StringBuilder message = new StringBuilder();
+        for (int i = 0; i < 256; i++) {
+            message.append('A');
+        }
+        h.compress(message.toString());
+    }
+
+    @Test
+    public void container_t4() {
+        Huffman h = new Huffman("ABBBCC");
+        StringBuilder message = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            message.append(i % 7 == 0 ? "ABC" : "BBC");
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            byte[] compressed = h.compressContainer(message.toString(), executor);
+            assertArrayEquals(h.compressContainer(message.toString()), compressed);
+            assertEquals(message.toString(), h.decompressContainer(compressed, executor));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static byte[] craftedIndexHeader() {
+        // An index of 2^40 - 1 one-char blocks, in a container a few bytes long
+        byte[] header = new byte[32];
+        System.arraycopy(HuffmanContainer.MAGIC, 0, header, 0, HuffmanContainer.MAGIC.length);
+        int pos = HuffmanContainer.MAGIC.length;
+        header[pos++] = HuffmanContainer.VERSION;
+        header[pos++] = HuffmanContainer.FLAG_INDEXED;
+        pos = HuffmanContainer.writeVarint(header, pos, 1);
+        pos = HuffmanContainer.writeVarint(header, pos, (1L << 40) - 1);
+        pos = HuffmanContainer.writeVarint(header, pos, (1L << 40) - 1);
+        return Arrays.copyOf(header, pos + 4);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void container_t5() {
+        new Huffman("ABBBCC").decompressContainer(craftedIndexHeader());
+    }
+
+    @Test(expected = IOException.class)
+    public void container_t6() throws IOException {
+        new Huffman("ABBBCC").decompress(new ByteArrayInputStream(craftedIndexHeader()), new ByteArrayOutputStream());
+    }
+
+    private static byte[] craftedNegativeBlock() {
+        // An unindexed container whose first block declares -1 chars in -1 bytes
+        byte[] container = new byte[64];
+        System.arraycopy(HuffmanContainer.MAGIC, 0, container, 0, HuffmanContainer.MAGIC.length);
+        int pos = HuffmanContainer.MAGIC.length;
+        container[pos++] = HuffmanContainer.VERSION;
+        container[pos++] = 0;
+        pos = HuffmanContainer.writeVarint(container, pos, HuffmanContainer.DEFAULT_BLOCK_CHARS);
+        pos = HuffmanContainer.writeVarint(container, pos, 1);
+        pos = HuffmanContainer.writeVarint(container, pos, -1);
+        pos = HuffmanContainer.writeVarint(container, pos, -1);
+        return Arrays.copyOf(container, pos + 8);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void container_t7() {
+        new Huffman("ABBBCC").decompressContainer(craftedNegativeBlock());
+    }
+
+    @Test(expected = IOException.class)
+    public void container_t8() throws IOException {
+        new Huffman("ABBBCC").decompress(new ByteArrayInputStream(craftedNegativeBlock()), new ByteArrayOutputStream());
+    }
+
+
+    // Model Serialization Tests
+    // -----------------------------------------------
+    @Test
+    public void model_t0() {
+        Huffman h = new Huffman("ABBBCC");
+        // version 1, 3 symbols: 'A' (65) length 2, +1 'B' length 1, +1 'C' length 2
+        byte[] model = {1, 3, 65, 2, 1, 1, 1, 2};
+        assertArrayEquals(model, h.exportModel());
+        Huffman loaded = Huffman.loadModel(model);
+        assertEquals(h.encodingMap, loaded.encodingMap);
+        assertEquals("BABCBC", loaded.decompress(h.compress("BABCBC")));
+    }
+
+    @Test
+    public void model_t1() {
+        String corpus = "the quick brown fox jumps over the lazy dog, again and again";
+        Huffman h = new Huffman(corpus);
+        Huffman loaded = Huffman.loadModel(h.exportModel());
+        assertArrayEquals(h.compressContainer(corpus), loaded.compressContainer(corpus));
+        assertEquals(corpus, loaded.decompressContainer(h.compressContainer(corpus)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void model_t2() {
+        // 3 symbols with 1-bit codes cannot form a prefix code
+        byte[] model = {1, 3, 65, 1, 1, 1, 1, 1};
+        Huffman.loadModel(model);
+    }
+
+    @Test
+    public void model_t3() {
+        Huffman h = new Huffman("");
+        // version 1, no symbols
+        byte[] model = {1, 0};
+        assertArrayEquals(model, h.exportModel());
+        Huffman loaded = Huffman.loadModel(model);
+        assertTrue(loaded.encodingMap.isEmpty());
+        assertArrayEquals(h.exportModel(), loaded.exportModel());
+        assertEquals("", loaded.decompress(h.compress("")));
+        assertEquals("", loaded.decompressContainer(h.compressContainer("")));
+    }
+
 }
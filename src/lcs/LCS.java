@@ -1,8 +1,19 @@
 package lcs;
 
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /*
  * Cooper LaRhette
@@ -22,35 +33,77 @@ public class LCS {
     // -----------------------------------------------
 
     /**
-     * Helper method that traces back through memoization table to find any and all LCS subsequences.
+     * Helper method that collects any and all LCS subsequences from a filled
+     * memoization table. Enumerates the distinct solutions directly, last
+     * char first, rather than tracing every one of the (possibly
+     * exponentially many) paths through the table: from a pair of prefixes,
+     * the candidates for the solution's last char are the chars whose last
+     * occurrence in both prefixes leaves prefixes with an LCS one shorter.
+     * Only reads cells a top-down fill solves, so either table works.
      * @param rStr 1st string to compare
-     * @param r Index of 1st string. Also represents row in the table.
      * @param cStr 2nd string to compare
-     * @param c Index of 2nd string. Also represents column in the table.
-     * @param memo Memoization table
+     * @param table Memoization table filled for rStr and cStr
      * @return Set of all LCS sequences.
      */
-    private static Set<String> collectSolution(String rStr, int r, String cStr, int c, int[][] memo) {
-        Set<String> tempSet;
+    private static Set<String> collectSolution(String rStr, String cStr, int[][] table) {
         Set<String> result = new HashSet<>();
-        if (r == 0 || c == 0) {
-            return new HashSet<>(Collections.singletonList(""));
-        } else if (rStr.charAt(r - 1) == cStr.charAt(c - 1)) {
-            tempSet = collectSolution(rStr, r - 1, cStr, c - 1, memo);
-            for (String str : tempSet) {
-                result.add(str + rStr.charAt(r - 1));
+        char[] symbols = commonSymbols(rStr, cStr);
+        int length = table[rStr.length()][cStr.length()];
+        char[] solution = new char[length];
+        // Prefix pair and next candidate at each depth of the search
+        int[] rAt = new int[length + 1], cAt = new int[length + 1], candidateAt = new int[length + 1];
+        rAt[0] = rStr.length();
+        cAt[0] = cStr.length();
+        int depth = 0;
+        while (depth >= 0) {
+            if (depth == length) {
+                result.add(new String(solution));
+                depth--;
+                continue;
             }
-            return result;
-        } else {
-            if (memo[r][c - 1] >= memo[r - 1][c]) {
-                result.addAll(collectSolution(rStr, r, cStr, c - 1, memo));
+            int r = rAt[depth], c = cAt[depth], rest = table[r][c] - 1;
+            int candidate = -1, rLast = -1, cLast = -1;
+            for (int k = candidateAt[depth]; k < symbols.length && candidate < 0; k++) {
+                rLast = rStr.lastIndexOf(symbols[k], r - 1);
+                cLast = cStr.lastIndexOf(symbols[k], c - 1);
+                if (rLast >= 0 && cLast >= 0 && table[rLast][cLast] == rest) {
+                    candidate = k;
+                }
             }
-            if (memo[r - 1][c] >= memo[r][c - 1]) {
-                result.addAll(collectSolution(rStr, r - 1, cStr, c, memo));
+            if (candidate < 0) {
+                depth--;
+                continue;
             }
-            return result;
+            candidateAt[depth] = candidate + 1;
+            solution[length - 1 - depth] = symbols[candidate];
+            rAt[depth + 1] = rLast;
+            cAt[depth + 1] = cLast;
+            candidateAt[depth + 1] = 0;
+            depth++;
         }
+        return result;
+    }
 
+    /**
+     * @param rStr 1st string to compare
+     * @param cStr 2nd string to compare
+     * @return Chars occurring in both strings, in sorted order.
+     */
+    private static char[] commonSymbols(String rStr, String cStr) {
+        BitSet inR = new BitSet(), common = new BitSet();
+        for (int r = 0; r < rStr.length(); r++) {
+            inR.set(rStr.charAt(r));
+        }
+        for (int c = 0; c < cStr.length(); c++) {
+            if (inR.get(cStr.charAt(c))) {
+                common.set(cStr.charAt(c));
+            }
+        }
+        char[] symbols = new char[common.cardinality()];
+        for (int k = 0, ch = common.nextSetBit(0); ch >= 0; k++, ch = common.nextSetBit(ch + 1)) {
+            symbols[k] = (char) ch;
+        }
+        return symbols;
     }
 
 
@@ -70,7 +123,24 @@ public class LCS {
      */
     public static Set<String> bottomUpLCS(String rStr, String cStr) {
         memoCheck = fillBottomUp(rStr, cStr);
-        return collectSolution(rStr, rStr.length(), cStr, cStr.length(), memoCheck);
+        return collectSolution(rStr, cStr, memoCheck);
+    }
+
+    /**
+     * Bottom-up approach as in {@link #bottomUpLCS(String, String)}, but
+     * filling the table on the given pool; see
+     * {@link #fillBottomUp(String, String, ForkJoinPool)}. Produces the same
+     * table and solutions.
+     *
+     * @param rStr The String found along the table's rows
+     * @param cStr The String found along the table's cols
+     * @param pool Pool to fill the table's tiles on
+     * @return The longest common subsequence between rStr and cStr +
+     * [Side Effect] sets memoCheck to refer to table
+     */
+    public static Set<String> bottomUpLCS(String rStr, String cStr, ForkJoinPool pool) {
+        memoCheck = fillBottomUp(rStr, cStr, pool);
+        return collectSolution(rStr, cStr, memoCheck);
     }
 
     /**
@@ -79,18 +149,85 @@ public class LCS {
      * @param cStr 2nd string to compare
      * @return Memoization table filled out according to bottom-up paradigm.
      */
-    private static int[][] fillBottomUp(String rStr, String cStr) {
+    static int[][] fillBottomUp(String rStr, String cStr) {
         int[][] table = new int[rStr.length() + 1][cStr.length() + 1];
-        for (int r = 1; r < rStr.length() + 1; r++) {
-            for (int c = 1; c < cStr.length() + 1; c++) {
-                if (rStr.charAt(r - 1) == cStr.charAt(c - 1)) {
-                    table[r][c] = 1 + table[r - 1][c - 1];
+        fillTile(rStr, 1, rStr.length() + 1, cStr, 1, cStr.length() + 1, table);
+        return table;
+    }
+
+    /**
+     * Side length, in cells, of the square tiles the parallel fill hands out:
+     * big enough that a tile's work dwarfs the cost of scheduling it, small
+     * enough that even moderate tables have many tiles per wavefront.
+     */
+    static final int TILE_SIZE = 256;
+
+    /**
+     * Helper method that fills the memoization table with LCS values in
+     * parallel. Each cell depends only on the cells above, left and
+     * above-left of it, so the table is cut into square tiles and the tiles
+     * are filled one anti-diagonal wavefront at a time: every tile on a
+     * wavefront depends only on tiles of earlier wavefronts, so they are
+     * filled concurrently. Tables of a single tile are filled on the
+     * calling thread.
+     *
+     * @param rStr 1st string to compare
+     * @param cStr 2nd string to compare
+     * @param pool Pool to fill tiles on
+     * @return Memoization table identical to {@link #fillBottomUp(String, String)}'s.
+     */
+    static int[][] fillBottomUp(String rStr, String cStr, ForkJoinPool pool) {
+        int rows = rStr.length(), cols = cStr.length();
+        int rowTiles = (rows + TILE_SIZE - 1) / TILE_SIZE, colTiles = (cols + TILE_SIZE - 1) / TILE_SIZE;
+        if (rowTiles <= 1 && colTiles <= 1) {
+            return fillBottomUp(rStr, cStr);
+        }
+        int[][] table = new int[rows + 1][cols + 1];
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                List<RecursiveAction> wavefront = new ArrayList<>();
+                for (int diagonal = 0; diagonal < rowTiles + colTiles - 1; diagonal++) {
+                    wavefront.clear();
+                    int first = Math.max(0, diagonal - colTiles + 1), last = Math.min(diagonal, rowTiles - 1);
+                    for (int tileRow = first; tileRow <= last; tileRow++) {
+                        int r = 1 + tileRow * TILE_SIZE, c = 1 + (diagonal - tileRow) * TILE_SIZE;
+                        wavefront.add(new RecursiveAction() {
+                            @Override
+                            protected void compute() {
+                                fillTile(rStr, r, Math.min(r + TILE_SIZE, rows + 1),
+                                        cStr, c, Math.min(c + TILE_SIZE, cols + 1), table);
+                            }
+                        });
+                    }
+                    // Joining the wavefront publishes its cells to the next one
+                    invokeAll(wavefront);
+                }
+            }
+        });
+        return table;
+    }
+
+    /**
+     * Fills the cells [rFrom, rTo) x [cFrom, cTo) of the memoization table,
+     * whose row rFrom - 1 and column cFrom - 1 must already be filled.
+     *
+     * @param rStr 1st string to compare
+     * @param cStr 2nd string to compare
+     * @param table Memoization table
+     */
+    private static void fillTile(String rStr, int rFrom, int rTo, String cStr, int cFrom, int cTo, int[][] table) {
+        for (int r = rFrom; r < rTo; r++) {
+            int[] row = table[r], above = table[r - 1];
+            char rChar = rStr.charAt(r - 1);
+            for (int c = cFrom; c < cTo; c++) {
+                if (rChar == cStr.charAt(c - 1)) {
+                    row[c] = 1 + above[c - 1];
                 } else {
-                    table[r][c] = Math.max(table[r - 1][c], table[r][c - 1]);
+                    row[c] = Math.max(above[c], row[c - 1]);
                 }
             }
         }
-        return table;
     }
 
     // -----------------------------------------------
@@ -99,8 +236,8 @@ public class LCS {
 
     /**
      * Top-down dynamic programming approach to the LCS problem, which
-     * solves smaller and smaller subproblems recursively using a tabular
-     * memoization structure.
+     * solves smaller and smaller subproblems using a tabular memoization
+     * structure; see {@link #fillTopDown(String, String)}.
      *
      * @param rStr The String found along the table's rows
      * @param cStr The String found along the table's cols
@@ -108,33 +245,514 @@ public class LCS {
      * [Side Effect] sets memoCheck to refer to table
      */
     public static Set<String> topDownLCS(String rStr, String cStr) {
-        int[][] table = new int[rStr.length() + 1][cStr.length() + 1];
-        table[rStr.length()][cStr.length()] = lcsRecursiveHelper(rStr, rStr.length(), cStr, cStr.length(), table);
+        int[][] table = fillTopDown(rStr, cStr);
         memoCheck = table;
-        return collectSolution(rStr, rStr.length(), cStr, cStr.length(), table);
+        return collectSolution(rStr, cStr, table);
+    }
+
+    /**
+     * Marks a memoization table cell whose subproblem is not solved yet.
+     */
+    private static final int UNSOLVED = -1;
+
+    /**
+     * Helper method that fills the memoization table according to the
+     * top-down paradigm: starting from the full problem, a cell is solved
+     * from the cells it depends on (above-left for matching chars, above
+     * and left otherwise), solving those first if the memo does not have
+     * them yet. An explicit stack of pending cells stands in for the call
+     * stack, so input size is not bounded by the thread's stack, and every
+     * cell is solved at most once: O(m * n) time in the worst case, and
+     * only the cells reachable from the full problem are ever filled.
+     *
+     * @param rStr 1st string to compare
+     * @param cStr 2nd string to compare
+     * @return Memoization table with the LCS length of every reachable
+     * subproblem; cells no subproblem depends on are left 0.
+     */
+    static int[][] fillTopDown(String rStr, String cStr) {
+        int rows = rStr.length(), cols = cStr.length();
+        int[][] table = new int[rows + 1][cols + 1];
+        for (int r = 1; r <= rows; r++) {
+            Arrays.fill(table[r], 1, cols + 1, UNSOLVED);
+        }
+
+        // Pending cells, as parallel row and column stacks
+        int[] rStack = new int[64], cStack = new int[64];
+        int size = 0;
+        if (rows > 0 && cols > 0) {
+            rStack[0] = rows;
+            cStack[0] = cols;
+            size = 1;
+        }
+        while (size > 0) {
+            int r = rStack[size - 1], c = cStack[size - 1];
+            if (table[r][c] != UNSOLVED) {
+                size--;
+                continue;
+            }
+            // Each cell is expanded at most once, pushing at most 2 others
+            if (size + 2 > rStack.length) {
+                rStack = Arrays.copyOf(rStack, 2 * rStack.length);
+                cStack = Arrays.copyOf(cStack, 2 * cStack.length);
+            }
+            if (rStr.charAt(r - 1) == cStr.charAt(c - 1)) {
+                int diagonal = table[r - 1][c - 1];
+                if (diagonal == UNSOLVED) {
+                    rStack[size] = r - 1;
+                    cStack[size++] = c - 1;
+                    continue;
+                }
+                table[r][c] = 1 + diagonal;
+            } else {
+                int left = table[r][c - 1], above = table[r - 1][c];
+                if (left == UNSOLVED || above == UNSOLVED) {
+                    if (left == UNSOLVED) {
+                        rStack[size] = r;
+                        cStack[size++] = c - 1;
+                    }
+                    if (above == UNSOLVED) {
+                        rStack[size] = r - 1;
+                        cStack[size++] = c;
+                    }
+                    continue;
+                }
+                table[r][c] = Math.max(left, above);
+            }
+            size--;
+        }
+
+        // Unreached cells read as 0, as in the bottom-up table's borders
+        for (int r = 1; r <= rows; r++) {
+            int[] row = table[r];
+            for (int c = 1; c <= cols; c++) {
+                if (row[c] == UNSOLVED) {
+                    row[c] = 0;
+                }
+            }
+        }
+        return table;
     }
 
+    // -----------------------------------------------
+    // Linear-Space LCS
+    // -----------------------------------------------
+
     /**
-     * Recursive helper which determines the length of the LCS and fills out the table according to top-down paradigm.
-     * @param rStr 1st string to compare.
-     * @param r Index of 1st string. Also represents row in the table.
-     * @param cStr 2nd string to compare.
-     * @param c Index of the 2nd string. Also represents column in the table.
-     * @param memo Memoization table to store values of a LCS of certain substrings of cStr and rStr
-     * @return The final value for the LCS.
+     * Computes the length of the LCS without the tabulation structure,
+     * keeping only the row of the table being filled: O(min(m, n)) memory
+     * rather than O(m * n), so arbitrarily long inputs fit. Does not set
+     * memoCheck.
+     *
+     * @param rStr 1st string to compare
+     * @param cStr 2nd string to compare
+     * @return Length of the longest common subsequence between rStr and cStr.
+     */
+    public static int lcsLength(String rStr, String cStr) {
+        // The shorter string runs along the row
+        if (cStr.length() > rStr.length()) {
+            String swap = rStr;
+            rStr = cStr;
+            cStr = swap;
+        }
+        int[] row = new int[cStr.length() + 1];
+        lengthRow(rStr, 0, rStr.length(), cStr, 0, cStr.length(), row);
+        return row[cStr.length()];
+    }
+
+    /**
+     * Hirschberg's divide-and-conquer approach to the LCS problem, which
+     * reconstructs one LCS in linear space: the middle row of rStr is split
+     * at the column where a forward pass over the top half and a backward
+     * pass over the bottom half add up to the LCS length, and each half is
+     * solved on its own. O(m * n) time, O(m + n) memory, and does not set
+     * memoCheck.
+     *
+     * @param rStr 1st string to compare
+     * @param cStr 2nd string to compare
+     * @return One longest common subsequence between rStr and cStr; when
+     * there are several, which one is unspecified.
+     */
+    public static String hirschbergLCS(String rStr, String cStr) {
+        StringBuilder result = new StringBuilder();
+        int[] forward = new int[cStr.length() + 1];
+        int[] backward = new int[cStr.length() + 1];
+        hirschberg(rStr, 0, rStr.length(), cStr, 0, cStr.length(), forward, backward, result);
+        return result.toString();
+    }
+
+    /**
+     * Recursive helper which appends one LCS of rStr[rFrom, rTo) and
+     * cStr[cFrom, cTo) to result.
+     *
+     * @param forward  Scratch row of at least cTo - cFrom + 1 entries
+     * @param backward Scratch row of at least cTo - cFrom + 1 entries
+     * @param result   Destination of the LCS, in order
+     */
+    private static void hirschberg(String rStr, int rFrom, int rTo, String cStr, int cFrom, int cTo,
+                                   int[] forward, int[] backward, StringBuilder result) {
+        if (rFrom == rTo || cFrom == cTo) {
+            return;
+        }
+        if (rTo - rFrom == 1) {
+            char only = rStr.charAt(rFrom);
+            for (int c = cFrom; c < cTo; c++) {
+                if (cStr.charAt(c) == only) {
+                    result.append(only);
+                    return;
+                }
+            }
+            return;
+        }
+        int rMid = (rFrom + rTo) >>> 1;
+        int cols = cTo - cFrom;
+        lengthRow(rStr, rFrom, rMid, cStr, cFrom, cTo, forward);
+        reverseLengthRow(rStr, rMid, rTo, cStr, cFrom, cTo, backward);
+        // forward[k]: LCS of the top half and cStr[cFrom, cFrom + k);
+        // backward[k]: LCS of the bottom half and cStr[cFrom + k, cTo)
+        int split = 0, best = -1;
+        for (int k = 0; k <= cols; k++) {
+            if (forward[k] + backward[k] > best) {
+                best = forward[k] + backward[k];
+                split = k;
+            }
+        }
+        hirschberg(rStr, rFrom, rMid, cStr, cFrom, cFrom + split, forward, backward, result);
+        hirschberg(rStr, rMid, rTo, cStr, cFrom + split, cTo, forward, backward, result);
+    }
+
+    /**
+     * Fills row with the last row of the bottom-up table for
+     * rStr[rFrom, rTo) and cStr[cFrom, cTo), one row at a time in place.
+     *
+     * @param row Destination; on return row[k] is the LCS length of
+     *            rStr[rFrom, rTo) and cStr[cFrom, cFrom + k)
      */
-    private static int lcsRecursiveHelper(String rStr, int r, String cStr, int c, int[][] memo) {
-        if (r == 0 || c == 0) {
+    private static void lengthRow(String rStr, int rFrom, int rTo, String cStr, int cFrom, int cTo, int[] row) {
+        int cols = cTo - cFrom;
+        Arrays.fill(row, 0, cols + 1, 0);
+        for (int r = rFrom; r < rTo; r++) {
+            char rChar = rStr.charAt(r);
+            // table[r - 1][c - 1], about to be overwritten
+            int diagonal = 0;
+            for (int c = 1; c <= cols; c++) {
+                int above = row[c];
+                if (rChar == cStr.charAt(cFrom + c - 1)) {
+                    row[c] = diagonal + 1;
+                } else if (row[c - 1] > above) {
+                    row[c] = row[c - 1];
+                }
+                diagonal = above;
+            }
+        }
+    }
+
+    /**
+     * Mirror image of {@link #lengthRow}, scanning both strings from the end.
+     *
+     * @param row Destination; on return row[k] is the LCS length of
+     *            rStr[rFrom, rTo) and cStr[cFrom + k, cTo)
+     */
+    private static void reverseLengthRow(String rStr, int rFrom, int rTo, String cStr, int cFrom, int cTo, int[] row) {
+        int cols = cTo - cFrom;
+        Arrays.fill(row, 0, cols + 1, 0);
+        for (int r = rTo - 1; r >= rFrom; r--) {
+            char rChar = rStr.charAt(r);
+            int diagonal = 0;
+            for (int c = cols - 1; c >= 0; c--) {
+                int below = row[c];
+                if (rChar == cStr.charAt(cFrom + c)) {
+                    row[c] = diagonal + 1;
+                } else if (row[c + 1] > below) {
+                    row[c] = row[c + 1];
+                }
+                diagonal = below;
+            }
+        }
+    }
+
+    // -----------------------------------------------
+    // Bit-Parallel LCS
+    // -----------------------------------------------
+
+    /**
+     * Computes the length of the LCS 64 table cells at a time, following
+     * Hyyro's bit-vector formulation of Allison and Dix's algorithm. The
+     * shorter string is packed into one match mask per distinct char, bit i
+     * set where that char occurs at index i. A bit vector V then stands in
+     * for a whole row of the table: its zero bits mark the columns where the
+     * row's value steps up. Each char of the longer string updates it with
+     * U = V &amp; match[char]; V = (V + U) | (V - U), where the carries of
+     * the addition do the work of the row's max propagation. O(m * n / 64)
+     * time and O(min(m, n) / 64) words of match masks. Does not set memoCheck.
+     *
+     * @param rStr 1st string to compare
+     * @param cStr 2nd string to compare
+     * @return Length of the longest common subsequence between rStr and cStr.
+     */
+    public static int bitParallelLength(String rStr, String cStr) {
+        // The shorter string is packed into the bit vectors
+        if (cStr.length() > rStr.length()) {
+            String swap = rStr;
+            rStr = cStr;
+            cStr = swap;
+        }
+        int m = cStr.length();
+        if (m == 0) {
             return 0;
-        } else if (rStr.charAt(r - 1) == cStr.charAt(c - 1)) {
-            memo[r][c] = 1 + lcsRecursiveHelper(rStr, r - 1, cStr, c - 1, memo);
-            return memo[r][c];
-        } else {
-            memo[r][c - 1] = lcsRecursiveHelper(rStr, r, cStr, c - 1, memo);
-            memo[r - 1][c] = lcsRecursiveHelper(rStr, r - 1, cStr, c, memo);
-            memo[r][c] = Math.max(memo[r - 1][c], memo[r][c - 1]);
-            return memo[r][c];
         }
+        int words = (m + 63) >>> 6;
+
+        // Dense index of each char of cStr; chars outside cStr never match
+        char maxChar = 0;
+        for (int i = 0; i < m; i++) {
+            maxChar = (char) Math.max(maxChar, cStr.charAt(i));
+        }
+        int[] indexOf = new int[maxChar + 1];
+        int distinct = 0;
+        for (int i = 0; i < m; i++) {
+            char c = cStr.charAt(i);
+            if (indexOf[c] == 0) {
+                indexOf[c] = ++distinct;
+            }
+        }
+        // Match mask of index k in matches[k * words, (k + 1) * words); index 0 is empty
+        long[] matches = new long[(distinct + 1) * words];
+        for (int i = 0; i < m; i++) {
+            matches[indexOf[cStr.charAt(i)] * words + (i >>> 6)] |= 1L << i;
+        }
+
+        if (words == 1) {
+            long v = -1L;
+            for (int j = 0; j < rStr.length(); j++) {
+                char c = rStr.charAt(j);
+                if (c <= maxChar) {
+                    long u = v & matches[indexOf[c]];
+                    v = (v + u) | (v - u);
+                }
+            }
+            return Long.bitCount(~v);
+        }
+
+        long[] v = new long[words];
+        Arrays.fill(v, -1L);
+        for (int j = 0; j < rStr.length(); j++) {
+            char c = rStr.charAt(j);
+            int match = c <= maxChar ? indexOf[c] * words : 0;
+            if (match == 0) {
+                continue;
+            }
+            long carry = 0;
+            for (int w = 0; w < words; w++) {
+                long vw = v[w];
+                long u = vw & matches[match + w];
+                long sum = vw + u + carry;
+                carry = ((vw & u) | ((vw | u) & ~sum)) >>> 63;
+                // U is a subset of V, so V - U never borrows
+                v[w] = sum | (vw & ~u);
+            }
+        }
+        // Bits past m are never matched, so they stay 1 and count for nothing
+        int length = 0;
+        for (long vw : v) {
+            length += Long.bitCount(~vw);
+        }
+        return length;
+    }
+
+    // -----------------------------------------------
+    // LCS Enumeration
+    // -----------------------------------------------
+
+    /**
+     * Lazily enumerates every distinct LCS of rStr and cStr, in
+     * lexicographic order; see {@link #lcsIterator(String, String)}.
+     *
+     * @param rStr 1st string to compare
+     * @param cStr 2nd string to compare
+     * @return Sequential, sorted stream of the distinct LCSs.
+     */
+    public static Stream<String> allLCS(String rStr, String cStr) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(lcsIterator(rStr, cStr),
+                Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.SORTED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * Lazily enumerates at most limit distinct LCSs of rStr and cStr, the
+     * lexicographically smallest ones; use {@link #countLCS(String, String)}
+     * to find out up front how many there are.
+     *
+     * @param rStr  1st string to compare
+     * @param cStr  2nd string to compare
+     * @param limit Most solutions to produce
+     * @return Sequential, sorted stream of at most limit distinct LCSs.
+     */
+    public static Stream<String> allLCS(String rStr, String cStr, long limit) {
+        return allLCS(rStr, cStr).limit(limit);
+    }
+
+    /**
+     * Iterates over every distinct LCS of rStr and cStr in lexicographic
+     * order, computing each one only when asked for. Solutions are built one
+     * char at a time: from a pair of suffixes, the candidates for the next
+     * char are the chars whose earliest occurrence in both suffixes leaves
+     * suffixes with an LCS one shorter, tried in sorted order. Every
+     * candidate leads to at least one solution, and two different
+     * candidates never lead to the same one, so each distinct LCS is
+     * produced exactly once with no set of those already seen. Setup is
+     * O(m * n) time and memory for the suffix LCS table; each solution
+     * then costs O(length * alphabet) time. Does not set memoCheck.
+     *
+     * @param rStr 1st string to compare
+     * @param cStr 2nd string to compare
+     * @return Iterator over the distinct LCSs; "" alone if there is no common char.
+     */
+    public static Iterator<String> lcsIterator(String rStr, String cStr) {
+        Suffixes suffixes = new Suffixes(rStr, cStr);
+        int length = suffixes.lcs[0][0];
+        char[] solution = new char[length];
+        // Suffix pair and next candidate at each depth of the search
+        int[] rAt = new int[length + 1], cAt = new int[length + 1], candidateAt = new int[length + 1];
+        return new Iterator<String>() {
+            int depth = 0;
+            boolean found = false;
+
+            @Override
+            public boolean hasNext() {
+                while (!found && depth >= 0) {
+                    if (depth == length) {
+                        found = true;
+                        break;
+                    }
+                    int r = rAt[depth], c = cAt[depth];
+                    int candidate = suffixes.nextCandidate(r, c, candidateAt[depth]);
+                    if (candidate < 0) {
+                        depth--;
+                        continue;
+                    }
+                    candidateAt[depth] = candidate + 1;
+                    solution[depth] = suffixes.symbols[candidate];
+                    rAt[depth + 1] = suffixes.rNext[candidate][r] + 1;
+                    cAt[depth + 1] = suffixes.cNext[candidate][c] + 1;
+                    candidateAt[depth + 1] = 0;
+                    depth++;
+                }
+                return found;
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                found = false;
+                depth--;
+                return new String(solution);
+            }
+        };
+    }
+
+    /**
+     * Counts the distinct LCSs of rStr and cStr without producing them, by
+     * summing, over the same candidates {@link #lcsIterator(String, String)}
+     * would try, the counts of the suffixes each one leaves. O(m * n *
+     * alphabet) time and O(m * n) memory, however many solutions there are.
+     * Does not set memoCheck.
+     *
+     * @param rStr 1st string to compare
+     * @param cStr 2nd string to compare
+     * @return Number of distinct longest common subsequences, 1 if the only
+     * one is "", or Long.MAX_VALUE if there are at least that many.
+     */
+    public static long countLCS(String rStr, String cStr) {
+        Suffixes suffixes = new Suffixes(rStr, cStr);
+        int rows = rStr.length(), cols = cStr.length();
+        long[][] counts = new long[rows + 1][cols + 1];
+        for (int r = rows; r >= 0; r--) {
+            for (int c = cols; c >= 0; c--) {
+                if (suffixes.lcs[r][c] == 0) {
+                    counts[r][c] = 1;
+                    continue;
+                }
+                long count = 0;
+                for (int k = suffixes.nextCandidate(r, c, 0); k >= 0; k = suffixes.nextCandidate(r, c, k + 1)) {
+                    long more = counts[suffixes.rNext[k][r] + 1][suffixes.cNext[k][c] + 1];
+                    count = count > Long.MAX_VALUE - more ? Long.MAX_VALUE : count + more;
+                }
+                counts[r][c] = count;
+            }
+        }
+        return counts[0][0];
+    }
+
+    /**
+     * Tables shared by LCS enumeration and counting: the LCS length of every
+     * pair of suffixes, and where each common char next occurs in each string.
+     */
+    private static final class Suffixes {
+
+        // Chars occurring in both strings, in sorted order
+        final char[] symbols;
+
+        // lcs[r][c]: LCS length of rStr[r, m) and cStr[c, n)
+        final int[][] lcs;
+
+        // rNext[k][r]: index of the first symbols[k] in rStr[r, m), or m if none; cNext likewise
+        final int[][] rNext;
+        final int[][] cNext;
+
+        Suffixes(String rStr, String cStr) {
+            int rows = rStr.length(), cols = cStr.length();
+            symbols = commonSymbols(rStr, cStr);
+
+            lcs = new int[rows + 1][cols + 1];
+            for (int r = rows - 1; r >= 0; r--) {
+                int[] row = lcs[r], below = lcs[r + 1];
+                char rChar = rStr.charAt(r);
+                for (int c = cols - 1; c >= 0; c--) {
+                    if (rChar == cStr.charAt(c)) {
+                        row[c] = 1 + below[c + 1];
+                    } else {
+                        row[c] = Math.max(below[c], row[c + 1]);
+                    }
+                }
+            }
+
+            rNext = nextOccurrences(rStr);
+            cNext = nextOccurrences(cStr);
+        }
+
+        private int[][] nextOccurrences(String str) {
+            int[][] next = new int[symbols.length][str.length() + 1];
+            for (int k = 0; k < symbols.length; k++) {
+                int[] at = next[k];
+                at[str.length()] = str.length();
+                for (int i = str.length() - 1; i >= 0; i--) {
+                    at[i] = str.charAt(i) == symbols[k] ? i : at[i + 1];
+                }
+            }
+            return next;
+        }
+
+        /**
+         * @param r    Start of the suffix of rStr
+         * @param c    Start of the suffix of cStr
+         * @param from Index of the first symbol to consider
+         * @return Index of the first symbol from there on that can start an
+         * LCS of the two suffixes, or -1 if there is none.
+         */
+        int nextCandidate(int r, int c, int from) {
+            int rest = lcs[r][c] - 1;
+            int rows = lcs.length - 1, cols = lcs[0].length - 1;
+            for (int k = from; k < symbols.length; k++) {
+                int rAt = rNext[k][r], cAt = cNext[k][c];
+                if (rAt < rows && cAt < cols && lcs[rAt + 1][cAt + 1] == rest) {
+                    return k;
+                }
+            }
+            return -1;
+        }
+
     }
 
 }
@@ -4,9 +4,15 @@ import org.junit.Test;
 
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class LCSTests {
 
@@ -227,4 +233,239 @@ public class LCSTests {
         );
     }
 
+    @Test
+    public void TDLCSTest_t8() {
+        // Reachable cells hold the same values as the bottom-up table
+        Random random = new Random(19);
+        for (int trial = 0; trial < 100; trial++) {
+            String rStr = randomString(random, random.nextInt(60), 3);
+            String cStr = randomString(random, random.nextInt(60), 3);
+            int[][] topDown = LCS.fillTopDown(rStr, cStr);
+            int[][] bottomUp = LCS.fillBottomUp(rStr, cStr);
+            for (int r = 0; r <= rStr.length(); r++) {
+                for (int c = 0; c <= cStr.length(); c++) {
+                    assertTrue(topDown[r][c] == 0 || topDown[r][c] == bottomUp[r][c]);
+                }
+            }
+            assertEquals(bottomUp[rStr.length()][cStr.length()], topDown[rStr.length()][cStr.length()]);
+        }
+    }
+
+    @Test
+    public void TDLCSTest_t9() {
+        // Disjoint alphabets reach every cell, and a deep enough chain of
+        // them to overflow any recursive solution's stack
+        StringBuilder rStr = new StringBuilder(), cStr = new StringBuilder();
+        for (int i = 0; i < 3000; i++) {
+            rStr.append((char) ('A' + i % 26));
+            cStr.append((char) ('a' + i % 26));
+        }
+        int[][] table = LCS.fillTopDown(rStr.toString(), cStr.toString());
+        assertEquals(0, table[3000][3000]);
+        // Identical strings only reach the diagonal
+        String same = rStr.toString();
+        table = LCS.fillTopDown(same, same);
+        assertEquals(3000, table[3000][3000]);
+        assertEquals(0, table[3000][2999]);
+    }
+
+    // Parallel Bottom-up LCS Tests
+    // -----------------------------------------------
+    @Test
+    public void PBULCSTest_t0() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertEquals(
+                    new HashSet<>(Arrays.asList(
+                            "AADV", "BADV"
+                    )),
+                    LCS.bottomUpLCS("ABADV", "BAADV", pool)
+            );
+            assertArrayEquals(
+                    new int[][]{
+                            {0, 0, 0, 0, 0, 0},
+                            {0, 0, 1, 1, 1, 1},
+                            {0, 1, 1, 1, 1, 1},
+                            {0, 1, 2, 2, 2, 2},
+                            {0, 1, 2, 2, 3, 3},
+                            {0, 1, 2, 2, 3, 4}
+                    },
+                    LCS.memoCheck
+            );
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void PBULCSTest_t1() {
+        // Tables of one, several and ragged tiles match the sequential fill
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Random random = new Random(17);
+            int tile = LCS.TILE_SIZE;
+            int[] lengths = {0, 1, tile - 1, tile, tile + 1, 3 * tile + 5};
+            for (int rLength : lengths) {
+                for (int cLength : lengths) {
+                    String rStr = randomString(random, rLength, 4);
+                    String cStr = randomString(random, cLength, 4);
+                    int[][] parallel = LCS.fillBottomUp(rStr, cStr, pool);
+                    assertArrayEquals(LCS.fillBottomUp(rStr, cStr), parallel);
+                    assertEquals(LCS.lcsLength(rStr, cStr), parallel[rLength][cLength]);
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // Linear-Space LCS Tests
+    // -----------------------------------------------
+    @Test
+    public void LSLCSTest_t0() {
+        assertEquals(0, LCS.lcsLength("", ""));
+        assertEquals(0, LCS.lcsLength("A", "B"));
+        assertEquals(3, LCS.lcsLength("ABC", "ABC"));
+        assertEquals(3, LCS.lcsLength("ABCDGH", "AEDFHR"));
+        assertEquals(9, LCS.lcsLength("GBJN1KMLPO", "AGEBDJFNHKRMZLlPSO"));
+        assertEquals(9, LCS.lcsLength("AGEBDJFNHKRMZLlPSO", "GBJN1KMLPO"));
+    }
+
+    @Test
+    public void LSLCSTest_t1() {
+        assertEquals("", LCS.hirschbergLCS("", ""));
+        assertEquals("", LCS.hirschbergLCS("A", "B"));
+        assertEquals("ABC", LCS.hirschbergLCS("ABC", "ABC"));
+        assertEquals("ADH", LCS.hirschbergLCS("ABCDGH", "AEDFHR"));
+        assertEquals("GBJNKMLPO", LCS.hirschbergLCS("GBJN1KMLPO", "AGEBDJFNHKRMZLlPSO"));
+        // One of the several solutions
+        assertTrue(new HashSet<>(Arrays.asList("AADV", "BADV")).contains(LCS.hirschbergLCS("ABADV", "BAADV")));
+    }
+
+    @Test
+    public void LSLCSTest_t2() {
+        // Agrees with the full table on random inputs, and is a subsequence of both
+        Random random = new Random(7);
+        for (int trial = 0; trial < 200; trial++) {
+            String rStr = randomString(random, random.nextInt(40), 4);
+            String cStr = randomString(random, random.nextInt(40), 4);
+            Set<String> all = LCS.bottomUpLCS(rStr, cStr);
+            int length = all.iterator().next().length();
+            assertEquals(length, LCS.lcsLength(rStr, cStr));
+            assertTrue(all.contains(LCS.hirschbergLCS(rStr, cStr)));
+        }
+    }
+
+    @Test
+    public void LSLCSTest_t3() {
+        // Long enough for a deep recursion with uneven splits
+        Random random = new Random(11);
+        String rStr = randomString(random, 3000, 4);
+        String cStr = randomString(random, 2000, 4);
+        String lcs = LCS.hirschbergLCS(rStr, cStr);
+        assertEquals(LCS.lcsLength(rStr, cStr), lcs.length());
+        assertTrue(isSubsequence(lcs, rStr));
+        assertTrue(isSubsequence(lcs, cStr));
+    }
+
+    // Bit-Parallel LCS Tests
+    // -----------------------------------------------
+    @Test
+    public void BPLCSTest_t0() {
+        assertEquals(0, LCS.bitParallelLength("", ""));
+        assertEquals(0, LCS.bitParallelLength("A", ""));
+        assertEquals(0, LCS.bitParallelLength("A", "B"));
+        assertEquals(3, LCS.bitParallelLength("ABC", "ABC"));
+        assertEquals(4, LCS.bitParallelLength("ABADV", "BAADV"));
+        assertEquals(3, LCS.bitParallelLength("ABCDGH", "AEDFHR"));
+        assertEquals(9, LCS.bitParallelLength("GBJN1KMLPO", "AGEBDJFNHKRMZLlPSO"));
+        assertEquals(2, LCS.bitParallelLength("\u00e9\u4e2dx", "\u4e2d\u00e9x"));
+    }
+
+    @Test
+    public void BPLCSTest_t1() {
+        // Lengths on either side of word boundaries, where carries cross words
+        Random random = new Random(13);
+        int[] lengths = {1, 63, 64, 65, 127, 128, 129, 300};
+        for (int rLength : lengths) {
+            for (int cLength : lengths) {
+                for (int alphabet : new int[]{1, 2, 4, 26}) {
+                    String rStr = randomString(random, rLength, alphabet);
+                    String cStr = randomString(random, cLength, alphabet);
+                    assertEquals(LCS.lcsLength(rStr, cStr), LCS.bitParallelLength(rStr, cStr));
+                }
+            }
+        }
+    }
+
+    // LCS Enumeration Tests
+    // -----------------------------------------------
+    @Test
+    public void ENLCSTest_t0() {
+        assertEquals(Arrays.asList(""), LCS.allLCS("", "").collect(Collectors.toList()));
+        assertEquals(Arrays.asList(""), LCS.allLCS("A", "B").collect(Collectors.toList()));
+        assertEquals(Arrays.asList("AADV", "BADV"), LCS.allLCS("ABADV", "BAADV").collect(Collectors.toList()));
+        assertEquals(Arrays.asList("AADV"), LCS.allLCS("ABADV", "BAADV", 1).collect(Collectors.toList()));
+        assertEquals(1, LCS.countLCS("", ""));
+        assertEquals(1, LCS.countLCS("A", "B"));
+        assertEquals(2, LCS.countLCS("ABADV", "BAADV"));
+        assertEquals(1, LCS.countLCS("GBJN1KMLPO", "AGEBDJFNHKRMZLlPSO"));
+    }
+
+    @Test
+    public void ENLCSTest_t1() {
+        // Same solutions as tracing through the full table, each once
+        Random random = new Random(23);
+        for (int trial = 0; trial < 300; trial++) {
+            String rStr = randomString(random, random.nextInt(14), 3);
+            String cStr = randomString(random, random.nextInt(14), 3);
+            Set<String> expected = LCS.bottomUpLCS(rStr, cStr);
+            List<String> solutions = LCS.allLCS(rStr, cStr).collect(Collectors.toList());
+            assertEquals(expected, new HashSet<>(solutions));
+            assertEquals(expected.size(), solutions.size());
+            assertEquals(expected.size(), LCS.countLCS(rStr, cStr));
+            // The top-down table leaves unreached cells 0, and still suffices
+            assertEquals(expected, LCS.topDownLCS(rStr, cStr));
+        }
+    }
+
+    @Test
+    public void ENLCSTest_t2() {
+        // Pairs of distinct chars in opposite orders: one char from each
+        // pair in any combination, 2^40 solutions in all
+        StringBuilder rStr = new StringBuilder(), cStr = new StringBuilder();
+        for (int pair = 0; pair < 40; pair++) {
+            char x = (char) ('0' + 2 * pair), y = (char) ('0' + 2 * pair + 1);
+            rStr.append(x).append(y);
+            cStr.append(y).append(x);
+        }
+        assertEquals(1L << 40, LCS.countLCS(rStr.toString(), cStr.toString()));
+        List<String> first = LCS.allLCS(rStr.toString(), cStr.toString(), 3).collect(Collectors.toList());
+        assertEquals(3, first.size());
+        assertTrue(first.get(0).compareTo(first.get(1)) < 0 && first.get(1).compareTo(first.get(2)) < 0);
+        for (String solution : first) {
+            assertEquals(40, solution.length());
+            assertTrue(isSubsequence(solution, rStr.toString()));
+            assertTrue(isSubsequence(solution, cStr.toString()));
+        }
+    }
+
+    private static String randomString(Random random, int length, int alphabet) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            result.append((char) ('A' + random.nextInt(alphabet)));
+        }
+        return result.toString();
+    }
+
+    private static boolean isSubsequence(String sub, String str) {
+        int i = 0;
+        for (int j = 0; j < str.length() && i < sub.length(); j++) {
+            if (str.charAt(j) == sub.charAt(i)) {
+                i++;
+            }
+        }
+        return i == sub.length();
+    }
+
 }